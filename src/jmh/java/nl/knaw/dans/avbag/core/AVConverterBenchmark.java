@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.config.PseudoFileSourcesConfig;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full conversion of one bag parent of the integration tests, from inbox to output directory. The input is kept, so only the output has to be
+ * cleared between invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class AVConverterBenchmark {
+
+    @Param({ "7bf09491-54b4-436e-7f59-1027f54cbb0c" })
+    public String bagParent;
+
+    private Path inbox;
+    private Path outbox;
+    private Path staging;
+    private PseudoFileSources pseudoFileSources;
+
+    @Setup(Level.Trial)
+    public void createInbox() throws Exception {
+        Path workDir = BenchmarkBags.WORK_DIR.resolve("AVConverterBenchmark");
+        FileUtils.deleteDirectory(workDir.toFile());
+        inbox = workDir.resolve("inbox");
+        outbox = workDir.resolve("outbox");
+        staging = Files.createDirectories(workDir.resolve("staging"));
+        FileUtils.copyDirectory(BenchmarkBags.INTEGRATION.resolve("input-bags").resolve(bagParent).toFile(), inbox.resolve(bagParent).toFile());
+        pseudoFileSources = new PseudoFileSources(new PseudoFileSourcesConfig(
+            BenchmarkBags.INTEGRATION.resolve("darkarchive"),
+            BenchmarkBags.INTEGRATION.resolve("springfield"),
+            BenchmarkBags.INTEGRATION.resolve("sources.csv")
+        ));
+    }
+
+    @Setup(Level.Invocation)
+    public void clearOutbox() throws Exception {
+        FileUtils.deleteDirectory(outbox.toFile());
+        Files.createDirectories(outbox);
+    }
+
+    @Benchmark
+    public void convertOne() throws Exception {
+        new AVConverter(inbox, outbox, staging, pseudoFileSources, true).convertAll();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.TestUtils;
+import nl.knaw.dans.bagit.domain.Bag;
+import nl.knaw.dans.bagit.reader.BagReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The steps of a conversion that work on a single bag, on bags of configurable size. Nothing is written to the bag, except by writeFilesXml and
+ * updateManifests, which rewrite what is already there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BagBenchmark {
+
+    @Param({ "100", "1000" })
+    public int numberOfFiles;
+
+    @Param({ "1024" })
+    public int fileSize;
+
+    private Path bagDir;
+    private Document filesXml;
+    private BagSession session;
+
+    @Setup(Level.Trial)
+    public void createBag() throws Exception {
+        bagDir = BenchmarkBags.createBag(BenchmarkBags.WORK_DIR.resolve("BagBenchmark"), numberOfFiles, fileSize);
+        filesXml = XmlUtil.readXml(bagDir.resolve("metadata/files.xml"));
+        session = BagSession.read(bagDir);
+    }
+
+    @Benchmark
+    public Document readXml() throws Exception {
+        return XmlUtil.readXml(bagDir.resolve("metadata/files.xml"));
+    }
+
+    @Benchmark
+    public void writeFilesXml() throws Exception {
+        XmlUtil.writeFilesXml(bagDir, filesXml);
+    }
+
+    @Benchmark
+    public BagSession readBagSession() throws Exception {
+        return BagSession.read(bagDir);
+    }
+
+    @Benchmark
+    public Set<Path> placeHolders() throws Exception {
+        // a copy, as PlaceHolders removes elements from files.xml
+        return new PlaceHolders(session.copyTo(bagDir)).getFilePaths();
+    }
+
+    @Benchmark
+    public Bag updateManifests() throws Exception {
+        Bag bag = new BagReader().read(bagDir);
+        TestUtils.updateManifests(bag);
+        return bag;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.TestUtils;
+import nl.knaw.dans.bagit.creator.BagCreator;
+import nl.knaw.dans.bagit.domain.Bag;
+import nl.knaw.dans.bagit.hash.StandardSupportedAlgorithms;
+import org.apache.commons.io.FileUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Bags of a given size for the benchmarks. Every third file is a place holder, every third file is NONE/NONE, the rest is ANONYMOUS with random content.
+ */
+public final class BenchmarkBags {
+    public static final Path WORK_DIR = Paths.get("target/jmh");
+    public static final Path INTEGRATION = Paths.get("src/test/resources/integration");
+
+    private BenchmarkBags() {
+    }
+
+    /**
+     * @param workDir       a directory for the bag, removed first if it exists
+     * @param numberOfFiles the number of payload files
+     * @param fileSize      the size of the payload files that are not place holders
+     * @return the bag directory, workDir/bag-parent/bag
+     */
+    public static Path createBag(Path workDir, int numberOfFiles, int fileSize) throws Exception {
+        FileUtils.deleteDirectory(workDir.toFile());
+        Path bagDir = workDir.resolve("bag-parent/bag");
+        Files.createDirectories(bagDir);
+        Random random = new Random(numberOfFiles);
+        byte[] content = new byte[fileSize];
+        StringBuilder filesXml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<files xmlns='http://easy.dans.knaw.nl/schemas/bag/metadata/files/' xmlns:dct='http://purl.org/dc/terms/'>\n");
+        for (int i = 0; i < numberOfFiles; i++) {
+            String name = "file-" + i + ".mp4";
+            boolean placeHolder = i % 3 == 0;
+            boolean noneNone = i % 3 == 1;
+            if (placeHolder) {
+                Files.createFile(bagDir.resolve(name));
+            }
+            else {
+                random.nextBytes(content);
+                Files.write(bagDir.resolve(name), content);
+            }
+            filesXml.append("  <file filepath='data/").append(name).append("'>\n")
+                .append("    <dct:identifier>easy-file:").append(i).append("</dct:identifier>\n");
+            if (placeHolder) {
+                filesXml.append("    <dct:source>http://legacy-storage.dans.knaw.nl/data/").append(name).append("</dct:source>\n");
+            }
+            String rights = noneNone ? "NONE" : "ANONYMOUS";
+            filesXml.append("    <accessibleToRights>").append(rights).append("</accessibleToRights>\n")
+                .append("    <visibleToRights>").append(rights).append("</visibleToRights>\n")
+                .append("  </file>\n");
+        }
+        filesXml.append("</files>\n");
+        Bag bag = BagCreator.bagInPlace(bagDir, Collections.singletonList(StandardSupportedAlgorithms.SHA1), false);
+        Files.createDirectories(bagDir.resolve("metadata"));
+        Files.write(bagDir.resolve("metadata/files.xml"), filesXml.toString().getBytes(UTF_8));
+        Files.write(bagDir.resolve("metadata/dataset.xml"), datasetXml().getBytes(UTF_8));
+        TestUtils.updateManifests(bag);
+        return bagDir;
+    }
+
+    private static String datasetXml() {
+        return "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<ddm:DDM xmlns:ddm='http://easy.dans.knaw.nl/schemas/md/ddm/' xmlns:dct='http://purl.org/dc/terms/'\n"
+            + "         xmlns:id-type='http://easy.dans.knaw.nl/schemas/vocab/identifier-type/' xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'>\n"
+            + "  <ddm:dcmiMetadata>\n"
+            + "    <dct:identifier xsi:type='id-type:URN'>urn:nbn:nl:ui:13-benchmark</dct:identifier>\n"
+            + "    <dct:identifier xsi:type='id-type:DOI'>10.17026/benchmark</dct:identifier>\n"
+            + "  </ddm:dcmiMetadata>\n"
+            + "</ddm:DDM>\n";
+    }
+}
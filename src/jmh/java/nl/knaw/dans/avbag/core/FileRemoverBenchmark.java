@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removing the place holders and NONE/NONE files, two thirds of the payload, from a fresh copy of a bag. The copy is made outside the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class FileRemoverBenchmark {
+
+    @Param({ "100", "1000" })
+    public int numberOfFiles;
+
+    private Path originalBagDir;
+    private Path bagDir;
+    private BagSession original;
+    private PlaceHolders placeHolders;
+    private BagSession session;
+
+    @Setup(Level.Trial)
+    public void createBag() throws Exception {
+        Path workDir = BenchmarkBags.WORK_DIR.resolve("FileRemoverBenchmark");
+        originalBagDir = BenchmarkBags.createBag(workDir.resolve("original"), numberOfFiles, 1024);
+        bagDir = workDir.resolve("copy/bag-parent/bag");
+        original = BagSession.read(originalBagDir);
+        placeHolders = new PlaceHolders(original);
+    }
+
+    @Setup(Level.Invocation)
+    public void copyBag() throws Exception {
+        FileUtils.deleteDirectory(bagDir.toFile());
+        FileUtils.copyDirectory(originalBagDir.toFile(), bagDir.toFile());
+        session = original.copyTo(bagDir);
+    }
+
+    @Benchmark
+    public List<Path> removeFiles() throws Exception {
+        FileElements fileElements = FileElements.index(session.getFilesXml(), placeHolders.getFilePaths(), Collections.emptySet(), true);
+        return new FileRemover(session).removeFiles(new NoneNoneAndPlaceHolderFilter(fileElements));
+    }
+}
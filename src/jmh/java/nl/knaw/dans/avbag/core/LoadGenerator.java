@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.TestUtils;
+import nl.knaw.dans.bagit.creator.BagCreator;
+import nl.knaw.dans.bagit.domain.Bag;
+import nl.knaw.dans.bagit.hash.StandardSupportedAlgorithms;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.text.MessageFormat.format;
+
+/**
+ * Generates input for load and soak tests of the conversion: an inbox of bag parents, darkarchive and springfield trees and a sources.csv that match them.
+ * The same seed gives the same output.
+ * <p>
+ * Each bag has a files.xml, a dataset.xml and valid manifests. Its payload files are place holders (empty, with a &lt;dct:source&gt;), NONE/NONE files or
+ * files with other rights, in configurable proportions. The first file always has ANONYMOUS rights, so no bag is rejected for being all NONE/NONE. The
+ * darkarchive and springfield files are sparse, so large "video" files take little disk space.
+ */
+@Command(
+    name = "generate-load",
+    mixinStandardHelpOptions = true,
+    description = "Generate input bags, darkarchive and springfield trees and a sources.csv for load tests.")
+public class LoadGenerator implements Callable<Integer> {
+    private static final String[] OTHER_RIGHTS = { "ANONYMOUS", "KNOWN", "RESTRICTED_REQUEST" };
+
+    @Parameters(index = "0",
+                paramLabel = "DIR",
+                description = "The directory to generate in, with subdirectories inbox, darkarchive and springfield and the file sources.csv. It must not exist.")
+    private Path dir;
+
+    @Option(names = "--bags", defaultValue = "10", description = "Number of bag parents. Default: ${DEFAULT-VALUE}")
+    private int numberOfBags;
+
+    @Option(names = "--files", defaultValue = "20", description = "Number of payload files per bag. Default: ${DEFAULT-VALUE}")
+    private int filesPerBag;
+
+    @Option(names = "--place-holders", defaultValue = "0.3", description = "Fraction of the files that are place holders. Default: ${DEFAULT-VALUE}")
+    private double placeHolderFraction;
+
+    @Option(names = "--none-none", defaultValue = "0.2", description = "Fraction of the files with rights NONE/NONE. Default: ${DEFAULT-VALUE}")
+    private double noneNoneFraction;
+
+    @Option(names = "--springfield", defaultValue = "0.5", description = "Fraction of the place holders with a springfield file. Default: ${DEFAULT-VALUE}")
+    private double springfieldFraction;
+
+    @Option(names = "--file-size", defaultValue = "4096", description = "Size in bytes of the payload files that are not place holders. Default: ${DEFAULT-VALUE}")
+    private int fileSize;
+
+    @Option(names = "--video-size", defaultValue = "104857600", description = "Size in bytes of the sparse darkarchive and springfield files. Default: ${DEFAULT-VALUE}")
+    private long videoSize;
+
+    @Option(names = "--relations", defaultValue = "10", description = "Number of <ddm:relation> elements in each dataset.xml. Default: ${DEFAULT-VALUE}")
+    private int numberOfRelations;
+
+    @Option(names = "--extra-rows", defaultValue = "0", description = "Rows to add to sources.csv for bag parents that are not in the inbox. Default: ${DEFAULT-VALUE}")
+    private long extraRows;
+
+    @Option(names = "--seed", defaultValue = "1", description = "Seed for the random choices and content. Default: ${DEFAULT-VALUE}")
+    private long seed;
+
+    private Random random;
+    private long placeHolders;
+    private long springfieldFiles;
+
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new LoadGenerator()).execute(args));
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (Files.exists(dir)) {
+            throw new IllegalArgumentException(format("{0} already exists", dir));
+        }
+        random = new Random(seed);
+        Files.createDirectories(dir.resolve("inbox"));
+        Files.createDirectories(dir.resolve("darkarchive"));
+        Files.createDirectories(dir.resolve("springfield"));
+        try (Writer writer = Files.newBufferedWriter(dir.resolve("sources.csv"), UTF_8);
+            CSVPrinter csv = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader("easy_file_id", "dataset_id", "path_in_AV_dir", "path_in_springfield_dir"))) {
+            for (int i = 0; i < numberOfBags; i++) {
+                generateBagParent(i, csv);
+            }
+            for (long i = 0; i < extraRows; i++) {
+                String bagParent = uuid("extra-" + i);
+                csv.printRecord("easy-file:" + (Long.MAX_VALUE - i), "easy-dataset:extra-" + i / 10, bagParent + "/bag/data/audio-video/extra-" + i + ".mp4", "");
+            }
+        }
+        System.out.println(format("Generated {0} bag parents with {1} place holders, of which {2} with a springfield file, and {3} rows in sources.csv in {4}",
+            numberOfBags, placeHolders, springfieldFiles, placeHolders + extraRows, dir));
+        return 0;
+    }
+
+    private void generateBagParent(int bagNumber, CSVPrinter csv) throws Exception {
+        String bagParent = uuid("bag-parent-" + bagNumber);
+        Path bagDir = dir.resolve("inbox").resolve(bagParent).resolve(uuid("bag-" + bagNumber));
+        Files.createDirectories(bagDir);
+        byte[] content = new byte[fileSize];
+        StringBuilder filesXml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<files xsi:schemaLocation='http://easy.dans.knaw.nl/schemas/bag/metadata/files/ http://easy.dans.knaw.nl/schemas/bag/metadata/files/files.xsd'\n"
+            + "       xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'\n"
+            + "       xmlns='http://easy.dans.knaw.nl/schemas/bag/metadata/files/'\n"
+            + "       xmlns:dct='http://purl.org/dc/terms/'>\n");
+        for (int i = 0; i < filesPerBag; i++) {
+            String fileId = "easy-file:" + ((long) bagNumber * filesPerBag + i + 1);
+            double kind = i == 0 ? 1.0 : random.nextDouble();
+            String filePath;
+            String rights;
+            String source = null;
+            if (kind < placeHolderFraction) {
+                filePath = "audio-video/file-" + i + ".mp4";
+                rights = OTHER_RIGHTS[random.nextInt(OTHER_RIGHTS.length)];
+                Files.createDirectories(bagDir.resolve(filePath).getParent());
+                Files.createFile(bagDir.resolve(filePath));
+                String pathInAvDir = bagParent + "/bag/data/" + filePath;
+                createSparseFile(dir.resolve("darkarchive").resolve(pathInAvDir));
+                String pathInSpringfieldDir = "";
+                if (random.nextDouble() < springfieldFraction) {
+                    pathInSpringfieldDir = "domain/dans/user/load/video/" + bagNumber + "/rawvideo/2/file-" + i + ".mp4";
+                    createSparseFile(dir.resolve("springfield").resolve(pathInSpringfieldDir));
+                    springfieldFiles++;
+                }
+                csv.printRecord(fileId, "easy-dataset:" + bagNumber, pathInAvDir, pathInSpringfieldDir);
+                source = "http://legacy-storage.dans.knaw.nl/data/load/" + bagNumber + "/file-" + i + ".mp4";
+                placeHolders++;
+            }
+            else {
+                filePath = "file-" + i + ".pdf";
+                rights = kind < placeHolderFraction + noneNoneFraction ? "NONE" : OTHER_RIGHTS[i == 0 ? 0 : random.nextInt(OTHER_RIGHTS.length)];
+                random.nextBytes(content);
+                Files.write(bagDir.resolve(filePath), content);
+            }
+            filesXml.append("    <file filepath='data/").append(filePath).append("'>\n")
+                .append("        <dct:identifier>").append(fileId).append("</dct:identifier>\n");
+            if (source != null) {
+                filesXml.append("        <dct:source>").append(source).append("</dct:source>\n");
+            }
+            filesXml.append("        <accessibleToRights>").append(rights).append("</accessibleToRights>\n")
+                .append("        <visibleToRights>").append(rights).append("</visibleToRights>\n")
+                .append("    </file>\n");
+        }
+        filesXml.append("</files>\n");
+
+        Bag bag = BagCreator.bagInPlace(bagDir, Collections.singletonList(StandardSupportedAlgorithms.SHA1), false);
+        Files.createDirectories(bagDir.resolve("metadata"));
+        Files.write(bagDir.resolve("metadata/files.xml"), filesXml.toString().getBytes(UTF_8));
+        Files.write(bagDir.resolve("metadata/dataset.xml"), datasetXml(bagNumber).getBytes(UTF_8));
+        TestUtils.updateManifests(bag);
+    }
+
+    private String datasetXml(int bagNumber) {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<ddm:DDM xmlns:ddm='http://easy.dans.knaw.nl/schemas/md/ddm/' xmlns:dct='http://purl.org/dc/terms/' xmlns:dc='http://purl.org/dc/elements/1.1/'\n"
+            + "         xmlns:id-type='http://easy.dans.knaw.nl/schemas/vocab/identifier-type/' xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'>\n"
+            + "  <ddm:profile>\n"
+            + "    <dc:title>Load test dataset " + bagNumber + "</dc:title>\n"
+            + "  </ddm:profile>\n"
+            + "  <ddm:dcmiMetadata>\n"
+            + "    <dct:identifier xsi:type='id-type:URN'>urn:nbn:nl:ui:13-load-" + bagNumber + "</dct:identifier>\n"
+            + "    <dct:identifier xsi:type='id-type:DOI'>10.17026/load-" + bagNumber + "</dct:identifier>\n"
+            + "    <dct:identifier xsi:type='id-type:EASY2'>easy-dataset:" + bagNumber + "</dct:identifier>\n");
+        for (int i = 0; i < numberOfRelations; i++) {
+            xml.append("    <ddm:relation href='https://example.org/load/").append(bagNumber).append('/').append(i).append("'>Relation ").append(i).append("</ddm:relation>\n");
+        }
+        return xml.append("  </ddm:dcmiMetadata>\n</ddm:DDM>\n").toString();
+    }
+
+    private void createSparseFile(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(videoSize);
+        }
+    }
+
+    private String uuid(String name) {
+        return UUID.nameUUIDFromBytes((seed + "/" + name).getBytes(UTF_8)).toString();
+    }
+}
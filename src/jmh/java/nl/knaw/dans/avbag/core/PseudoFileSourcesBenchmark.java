@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.config.PseudoFileSourcesConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Loading a sources.csv with many rows. The rows have no springfield path, so no files have to exist for them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PseudoFileSourcesBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int numberOfRows;
+
+    private PseudoFileSourcesConfig config;
+
+    @Setup(Level.Trial)
+    public void createCsv() throws Exception {
+        Path workDir = BenchmarkBags.WORK_DIR.resolve("PseudoFileSourcesBenchmark");
+        Path darkarchive = Files.createDirectories(workDir.resolve("darkarchive"));
+        Path springfield = Files.createDirectories(workDir.resolve("springfield"));
+        Path csv = workDir.resolve("sources.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, UTF_8)) {
+            writer.write("easy_file_id,dataset_id,path_in_AV_dir,path_in_springfield_dir\n");
+            for (int i = 0; i < numberOfRows; i++) {
+                // about ten files per bag parent, like the real data
+                writer.write("easy-file:" + i + ",easy-dataset:" + i / 10 + ",bag-parent-" + i / 10 + "/bag/data/file-" + i + ".mp4,\n");
+            }
+        }
+        config = new PseudoFileSourcesConfig(darkarchive, springfield, csv);
+    }
+
+    @Benchmark
+    public PseudoFileSources load() throws Exception {
+        return new PseudoFileSources(config);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and serializing XML in memory, with the parsers and transformers that {@link XmlUtil} reuses per thread. Reading and writing files.xml is
+ * in {@link BagBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlUtilBenchmark {
+
+    @Param({ "200" })
+    public int numberOfFiles;
+
+    private String xml;
+    private Node file;
+
+    @Setup(Level.Trial)
+    public void createXml() throws Exception {
+        StringBuilder builder = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<files xmlns='http://easy.dans.knaw.nl/schemas/bag/metadata/files/' xmlns:dct='http://purl.org/dc/terms/'>\n");
+        for (int i = 0; i < numberOfFiles; i++) {
+            builder.append("  <file filepath='data/\u00eb-").append(i).append(".mp4'>")
+                .append("<dct:identifier>easy-file:").append(i).append("</dct:identifier>")
+                .append("<accessibleToRights>ANONYMOUS</accessibleToRights><visibleToRights>ANONYMOUS</visibleToRights></file>\n");
+        }
+        xml = builder.append("</files>\n").toString();
+        Document document = XmlUtil.readXmlFromString(xml);
+        file = document.getElementsByTagName("file").item(0);
+    }
+
+    @Benchmark
+    public Document readXmlFromString() throws Exception {
+        return XmlUtil.readXmlFromString(xml);
+    }
+
+    @Benchmark
+    public String serializeNode() throws Exception {
+        return XmlUtil.serializeNode(file);
+    }
+}
@@ -50,6 +50,8 @@ import static nl.knaw.dans.lib.util.AbstractCommandLineApp.EXAMPLE_CONFIG_FILE_K
 public abstract class AbstractCommandLineAppJava8<C extends Configuration> implements Callable<Integer> {
     // copy-pasted because the library version imports io.dropwizard.core.Configuration
 
+    private MetricRegistry metricRegistry;
+
     public void run(String[] args) throws IOException, ConfigurationException {
         // Shut up java.util.logging to avoid com.fasterxml.jackson.module.blackbird.util.ReflectionHack warning about Java 9+ modules
         java.util.logging.Logger.getLogger("").setLevel(java.util.logging.Level.OFF);
@@ -63,7 +65,7 @@ public abstract class AbstractCommandLineAppJava8<C extends Configuration> imple
             System.err.println("Configuration file not found, copied example configuration file to " + configFile.getAbsolutePath());
         }
         C config = loadConfiguration(configFile);
-        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry = new MetricRegistry();
         config.getLoggingFactory().configure(metricRegistry, getName());
         CommandLine commandLine = new CommandLine(this);
         configureCommandLine(commandLine, config);
@@ -84,6 +86,13 @@ public abstract class AbstractCommandLineAppJava8<C extends Configuration> imple
         return configurationFactory.build(sourceProvider, configFile.getPath());
     }
 
+    /**
+     * @return the registry of the process, available from {@link #configureCommandLine(CommandLine, Configuration)} on
+     */
+    public MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
     public abstract String getName();
 
     public abstract void configureCommandLine(CommandLine commandLine, C config);
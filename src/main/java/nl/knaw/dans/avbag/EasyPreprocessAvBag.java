@@ -19,7 +19,9 @@ package nl.knaw.dans.avbag;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.AbstractCommandLineAppJava8;
 import nl.knaw.dans.lib.util.PicocliVersionProvider;
+import nl.knaw.dans.avbag.command.BenchmarkDigestsCommand;
 import nl.knaw.dans.avbag.command.ConvertCommand;
+import nl.knaw.dans.avbag.command.ServerCommand;
 import nl.knaw.dans.avbag.config.EasyPreprocessAvBagConfig;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
@@ -47,9 +49,8 @@ public class EasyPreprocessAvBag extends AbstractCommandLineAppJava8<EasyPreproc
         log.debug("Configuring command line");
         log.debug(System.getProperty(EXAMPLE_CONFIG_FILE_KEY));
         log.debug(System.getProperty(CONFIG_FILE_KEY));
-        commandLine.addSubcommand(new ConvertCommand(
-            config.getPseudoFileSources(),
-            config.getStagingDir()
-        ));
+        commandLine.addSubcommand(new ConvertCommand(config, getMetricRegistry()));
+        commandLine.addSubcommand(new ServerCommand());
+        commandLine.addSubcommand(new BenchmarkDigestsCommand());
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.dropwizard.Application;
+import io.dropwizard.configuration.EnvironmentVariableSubstitutor;
+import io.dropwizard.configuration.SubstitutingSourceProvider;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import nl.knaw.dans.avbag.config.EasyPreprocessAvBagConfig;
+import nl.knaw.dans.avbag.core.Digests;
+import nl.knaw.dans.avbag.core.Fsync;
+import nl.knaw.dans.avbag.core.JobQueue;
+import nl.knaw.dans.avbag.core.JobRunner;
+import nl.knaw.dans.avbag.core.PseudoFileSources;
+import nl.knaw.dans.avbag.core.RetryPolicy;
+import nl.knaw.dans.avbag.core.Throttling;
+import nl.knaw.dans.avbag.core.Trash;
+import nl.knaw.dans.avbag.resources.JobsResource;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The service started by the server command: conversion jobs submitted over HTTP and run by a {@link JobRunner}.
+ */
+public class EasyPreprocessAvBagApplication extends Application<EasyPreprocessAvBagConfig> {
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    @Override
+    public String getName() {
+        return "Easy Preprocess Av Bag";
+    }
+
+    @Override
+    public void initialize(Bootstrap<EasyPreprocessAvBagConfig> bootstrap) {
+        bootstrap.setConfigurationSourceProvider(
+            new SubstitutingSourceProvider(bootstrap.getConfigurationSourceProvider(), new EnvironmentVariableSubstitutor(false)));
+        bootstrap.getObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    @Override
+    public void run(EasyPreprocessAvBagConfig config, Environment environment) throws Exception {
+        if (config.getJobs().getQueueDir() == null) {
+            throw new IllegalArgumentException("jobs.queueDir is required for the server command");
+        }
+        if (config.getJobs().getInputRoot() == null || config.getJobs().getOutputRoot() == null) {
+            throw new IllegalArgumentException("jobs.inputRoot and jobs.outputRoot are required for the server command");
+        }
+        Throttling.configure(config.getThrottling());
+        Fsync.configure(config.getDurability());
+        Digests.configure(config.getDigestProviders());
+        JobRunner jobRunner = new JobRunner(
+            new JobQueue(config.getJobs().getQueueDir()),
+            config.getStagingDir(),
+            new PseudoFileSources(config.getPseudoFileSources()),
+            config.getJobs().getWorkers(),
+            config.getTransferThreads());
+        jobRunner.setRetryPolicy(RetryPolicy.of(config.getRetry()));
+        jobRunner.setPayloadStaging(config.getPayloadStaging());
+        jobRunner.setExtraManifestAlgorithms(Digests.algorithms(config.getExtraManifestAlgorithms()));
+        jobRunner.setDeduplicateSpringfieldFiles(config.isDeduplicateSpringfieldFiles());
+        jobRunner.setProgressInterval(config.getProgressInterval().toJavaDuration());
+        jobRunner.setPrefetchConfig(config.getPrefetch());
+        jobRunner.registerMetrics(environment.metrics());
+        Fsync.registerMetrics(environment.metrics());
+        if (config.getTrash().getDir() != null) {
+            Trash trash = new Trash(config.getTrash().getDir(), config.getTrash().getThreads());
+            trash.registerMetrics(environment.metrics());
+            jobRunner.setTrash(trash);
+            // managed before the job runner, so that it is closed after the jobs are stopped
+            environment.lifecycle().manage(new Managed() {
+
+                @Override
+                public void start() {
+                }
+
+                @Override
+                public void stop() {
+                    trash.close();
+                }
+            });
+        }
+        environment.lifecycle().manage(jobRunner);
+        environment.lifecycle().manage(new Managed() {
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() {
+                stopped.countDown();
+            }
+        });
+        environment.jersey().register(new JobsResource(jobRunner, config.getJobs().getInputRoot(), config.getJobs().getOutputRoot()));
+    }
+
+    /**
+     * Blocks until the server is stopped, for example by a SIGTERM.
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+}
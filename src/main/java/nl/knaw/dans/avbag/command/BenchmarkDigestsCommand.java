@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.command;
+
+import nl.knaw.dans.avbag.core.DigestBenchmark;
+import nl.knaw.dans.avbag.core.Digests;
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@Command(
+    name = "benchmark-digests",
+    mixinStandardHelpOptions = true,
+    description = "Measure the checksum throughput of the security providers on this host, to choose the digestProviders in the configuration file.")
+public class BenchmarkDigestsCommand implements Callable<Integer> {
+
+    @Parameters(index = "0..*",
+                paramLabel = "ALGORITHM",
+                description = "The algorithms to measure, as in the names of manifest files. Default: sha1 sha256 sha512.")
+    private List<String> algorithms = Arrays.asList("sha1", "sha256", "sha512");
+
+    @Option(names = { "--megabytes" },
+            paramLabel = "N",
+            defaultValue = "512",
+            description = "The amount of data to hash per provider, after a warm-up. Default: ${DEFAULT-VALUE}.")
+    private int megabytes;
+
+    @Override
+    public Integer call() throws Exception {
+        for (SupportedAlgorithm algorithm : Digests.algorithms(algorithms)) {
+            for (DigestBenchmark.Result result : DigestBenchmark.run(algorithm, megabytes)) {
+                System.out.println(result);
+            }
+        }
+        return 0;
+    }
+}
@@ -15,14 +15,31 @@
  */
 package nl.knaw.dans.avbag.command;
 
+import com.codahale.metrics.MetricRegistry;
+import jdk.jfr.Recording;
 import lombok.extern.slf4j.Slf4j;
-import nl.knaw.dans.avbag.config.PseudoFileSourcesConfig;
+import nl.knaw.dans.avbag.config.EasyPreprocessAvBagConfig;
+import nl.knaw.dans.avbag.config.PrefetchConfig;
+import nl.knaw.dans.avbag.config.TrashConfig;
 import nl.knaw.dans.avbag.core.AVConverter;
+import nl.knaw.dans.avbag.core.BagTransfer;
+import nl.knaw.dans.avbag.core.ConversionEvents;
+import nl.knaw.dans.avbag.core.Digests;
+import nl.knaw.dans.avbag.core.Fsync;
+import nl.knaw.dans.avbag.core.MetricsExporter;
+import nl.knaw.dans.avbag.core.Prefetcher;
 import nl.knaw.dans.avbag.core.PseudoFileSources;
+import nl.knaw.dans.avbag.core.RetryPolicy;
+import nl.knaw.dans.avbag.core.SchedulingPolicy;
+import nl.knaw.dans.avbag.core.Shard;
+import nl.knaw.dans.avbag.core.Throttling;
+import nl.knaw.dans.avbag.core.Trash;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
 
 import javax.validation.constraints.NotNull;
 import java.nio.file.Path;
@@ -35,8 +52,11 @@ import java.util.concurrent.Callable;
     description = "Convert the bags.")
 public class ConvertCommand implements Callable<Integer> {
 
-    private final Path stagingDir;
-    private final PseudoFileSourcesConfig config;
+    private final EasyPreprocessAvBagConfig config;
+    private final MetricRegistry metricRegistry;
+
+    @Spec
+    private CommandSpec spec;
 
     @CommandLine.Parameters(index = "0",
                             paramLabel = "INPUT_DIR",
@@ -52,20 +72,101 @@ public class ConvertCommand implements Callable<Integer> {
             description = "Keep the input files after conversion.")
     private boolean keepInput;
 
-    public ConvertCommand(PseudoFileSourcesConfig config, @NotNull Path stagingDir) {
+    @Option(names = { "--shard" },
+            paramLabel = "i/n",
+            converter = ShardConverter.class,
+            description = "Only convert the bag parents in shard i of n (0 <= i < n), partitioned by a hash of the bag parent name. "
+                + "Claims each bag parent with a lock file in INPUT_DIR, so hosts sharing INPUT_DIR never convert the same bag parent.")
+    private Shard shard;
+
+    @Option(names = { "--report-dir" },
+            paramLabel = "DIR",
+            description = "Write a report per bag parent, as CSV and JSON, to this directory at the end of the run.")
+    private Path reportDir;
+
+    @Option(names = { "--parallelism" },
+            paramLabel = "N",
+            defaultValue = "1",
+            description = "Number of bag parents converted at the same time. Default: ${DEFAULT-VALUE}.")
+    private int parallelism;
+
+    @Option(names = { "--scheduling" },
+            paramLabel = "POLICY",
+            defaultValue = "DIRECTORY",
+            description = "Order of the bag parents: ${COMPLETION-CANDIDATES}. Default: ${DEFAULT-VALUE}.")
+    private SchedulingPolicy schedulingPolicy;
+
+    @Option(names = { "--jfr" },
+            paramLabel = "FILE",
+            description = "Record the run with Java Flight Recorder, including the conversion events, and write the recording to this file.")
+    private Path jfr;
+
+    public ConvertCommand(@NotNull EasyPreprocessAvBagConfig config, @NotNull MetricRegistry metricRegistry) {
         this.config = config;
-        this.stagingDir = stagingDir;
+        this.metricRegistry = metricRegistry;
     }
 
     @Override
     public Integer call() {
+        if (parallelism < 1) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--parallelism must be at least 1");
+        }
         try {
-            new AVConverter(inputDir.toAbsolutePath(), outputDir.toAbsolutePath(), stagingDir.toAbsolutePath(), new PseudoFileSources(config), keepInput)
-                .convertAll();
+            Throttling.configure(config.getThrottling());
+            Fsync.configure(config.getDurability());
+            Digests.configure(config.getDigestProviders());
+            PseudoFileSources pseudoFileSources = new PseudoFileSources(config.getPseudoFileSources());
+            AVConverter avConverter = new AVConverter(inputDir.toAbsolutePath(), outputDir.toAbsolutePath(), config.getStagingDir().toAbsolutePath(),
+                pseudoFileSources, keepInput);
+            avConverter.setShard(shard);
+            avConverter.setReportDir(reportDir);
+            avConverter.setParallelism(parallelism);
+            avConverter.setSchedulingPolicy(schedulingPolicy);
+            avConverter.setProgressInterval(config.getProgressInterval().toJavaDuration());
+            avConverter.setRetryPolicy(RetryPolicy.of(config.getRetry()));
+            avConverter.setPayloadStaging(config.getPayloadStaging());
+            avConverter.setExtraManifestAlgorithms(Digests.algorithms(config.getExtraManifestAlgorithms()));
+            avConverter.setDeduplicateSpringfieldFiles(config.isDeduplicateSpringfieldFiles());
+            BagTransfer bagTransfer = new BagTransfer(config.getTransferThreads());
+            avConverter.setBagTransfer(bagTransfer);
+            avConverter.registerMetrics(metricRegistry);
+            bagTransfer.registerMetrics(metricRegistry);
+            Fsync.registerMetrics(metricRegistry);
+            Recording recording = jfr == null ? null : ConversionEvents.startRecording(jfr);
+            TrashConfig trashConfig = config.getTrash();
+            PrefetchConfig prefetchConfig = config.getPrefetch();
+            try (Trash trash = keepInput || trashConfig.getDir() == null ? null : new Trash(trashConfig.getDir(), trashConfig.getThreads());
+                Prefetcher prefetcher = prefetchConfig.getCacheDir() == null ? null : new Prefetcher(prefetchConfig.getCacheDir(),
+                    prefetchConfig.getMaxSize().toBytes(), prefetchConfig.getLookahead(), pseudoFileSources);
+                MetricsExporter ignored = new MetricsExporter(config.getMetricsExport(), metricRegistry)) {
+                if (trash != null) {
+                    trash.registerMetrics(metricRegistry);
+                }
+                if (prefetcher != null) {
+                    prefetcher.registerMetrics(metricRegistry);
+                }
+                avConverter.setTrash(trash);
+                avConverter.setPrefetcher(prefetcher);
+                avConverter.convertAll();
+            }
+            finally {
+                if (recording != null) {
+                    recording.stop();
+                    recording.close();
+                    log.info("Flight recording written to {}", jfr);
+                }
+            }
         }
         catch (Exception e) {
             throw new RuntimeException(e);
         }
         return 0;
     }
+
+    public static class ShardConverter implements CommandLine.ITypeConverter<Shard> {
+        @Override
+        public Shard convert(String value) {
+            return Shard.parse(value);
+        }
+    }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.command;
+
+import nl.knaw.dans.avbag.EasyPreprocessAvBagApplication;
+import picocli.CommandLine.Command;
+
+import java.util.concurrent.Callable;
+
+import static nl.knaw.dans.lib.util.AbstractCommandLineApp.CONFIG_FILE_KEY;
+
+@Command(
+    name = "server",
+    mixinStandardHelpOptions = true,
+    description = "Run as a service that accepts conversion jobs over HTTP.")
+public class ServerCommand implements Callable<Integer> {
+
+    @Override
+    public Integer call() throws Exception {
+        EasyPreprocessAvBagApplication application = new EasyPreprocessAvBagApplication();
+        application.run("server", System.getProperty(CONFIG_FILE_KEY));
+        // the server runs on its own threads, the process must not exit before it stops
+        application.awaitStop();
+        return 0;
+    }
+}
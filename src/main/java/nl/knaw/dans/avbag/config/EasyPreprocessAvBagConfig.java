@@ -17,13 +17,22 @@
 package nl.knaw.dans.avbag.config;
 
 import io.dropwizard.Configuration;
+import io.dropwizard.util.Duration;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import nl.knaw.dans.avbag.core.Durability;
+import nl.knaw.dans.avbag.core.PayloadStaging;
 
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Data
 @EqualsAndHashCode(callSuper = true)
@@ -36,4 +45,69 @@ public class EasyPreprocessAvBagConfig extends Configuration {
 
     @NotNull
     private Path stagingDir;
+
+    /**
+     * COPY to copy the payload into the staging directory, LINK to write only the tag files there and link the payload.
+     */
+    @NotNull
+    private PayloadStaging payloadStaging = PayloadStaging.COPY;
+
+    /**
+     * Whether a Springfield file added to several bags in one run is copied into the staging directory once and hard-linked.
+     */
+    private boolean deduplicateSpringfieldFiles = false;
+
+    /**
+     * NONE, PER_BAG or STRICT: when written data is forced to disk.
+     */
+    @NotNull
+    private Durability durability = Durability.NONE;
+
+    /**
+     * Manifest algorithms added to the output bags next to those of the input bags, for example sha256.
+     */
+    @NotNull
+    private List<String> extraManifestAlgorithms = new ArrayList<>();
+
+    /**
+     * Security provider per manifest algorithm: the name of an installed provider, the class name of a provider, or auto for the fastest on the host.
+     */
+    @NotNull
+    private Map<String, String> digestProviders = new HashMap<>();
+
+    @Valid
+    @NotNull
+    private ThrottlingConfig throttling = new ThrottlingConfig();
+
+    /**
+     * Number of files copied in parallel when the output directory is on another file system than the staging directory.
+     */
+    @Min(1)
+    private int transferThreads = 4;
+
+    /**
+     * Time between two progress lines during a conversion, 0 for none.
+     */
+    @NotNull
+    private Duration progressInterval = Duration.minutes(1);
+
+    @Valid
+    @NotNull
+    private MetricsConfig metricsExport = new MetricsConfig();
+
+    @Valid
+    @NotNull
+    private JobsConfig jobs = new JobsConfig();
+
+    @Valid
+    @NotNull
+    private RetryConfig retry = new RetryConfig();
+
+    @Valid
+    @NotNull
+    private TrashConfig trash = new TrashConfig();
+
+    @Valid
+    @NotNull
+    private PrefetchConfig prefetch = new PrefetchConfig();
 }
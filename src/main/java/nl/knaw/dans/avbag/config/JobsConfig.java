@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+import java.nio.file.Path;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class JobsConfig {
+
+    /**
+     * Directory where the jobs of the server command are kept, one JSON file per job, together with their reports. Required for the server command.
+     */
+    private Path queueDir;
+
+    /**
+     * Number of jobs converted in parallel by the server command.
+     */
+    @Min(1)
+    private int workers = 2;
+
+    /**
+     * The inputDir of a job must be this directory or below it. Required for the server command.
+     */
+    private Path inputRoot;
+
+    /**
+     * The outputDir of a job must be this directory or below it. Required for the server command.
+     */
+    private Path outputRoot;
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.config;
+
+import io.dropwizard.util.Duration;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.nio.file.Path;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MetricsConfig {
+
+    /**
+     * Register the metrics as JMX beans in the domain nl.knaw.dans.avbag.metrics.
+     */
+    private boolean jmx = true;
+
+    /**
+     * File to write the metrics to in the Prometheus text format, for example for the textfile collector of the node exporter. Not written if null.
+     */
+    private Path prometheusFile;
+
+    /**
+     * Port to serve the metrics on in the Prometheus text format, at /metrics. Not served if 0.
+     */
+    @Min(0)
+    @Max(65535)
+    private int prometheusPort = 0;
+
+    @NotNull
+    private String prometheusHost = "127.0.0.1";
+
+    /**
+     * Time between two updates of {@link #prometheusFile}.
+     */
+    @NotNull
+    private Duration interval = Duration.seconds(15);
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.config;
+
+import io.dropwizard.util.DataSize;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.nio.file.Path;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PrefetchConfig {
+
+    /**
+     * Directory on local disk for copies of the Springfield files of upcoming bag parents. Without it, nothing is prefetched.
+     */
+    private Path cacheDir;
+
+    @NotNull
+    private DataSize maxSize = DataSize.gigabytes(10);
+
+    /**
+     * Number of bag parents to fetch ahead of the conversion.
+     */
+    @Min(1)
+    private int lookahead = 2;
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.config;
+
+import io.dropwizard.util.Duration;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.Arrays;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RetryConfig {
+
+    /**
+     * Number of attempts to convert a bag, 1 for no retries.
+     */
+    @Min(1)
+    private int maxAttempts = 1;
+
+    @NotNull
+    private Duration initialDelay = Duration.seconds(10);
+
+    @NotNull
+    private Duration maxDelay = Duration.minutes(5);
+
+    @DecimalMin("1.0")
+    private double multiplier = 2.0;
+
+    /**
+     * Messages of I/O errors that are worth a retry, matched case-insensitively against the messages of the exception and its causes.
+     */
+    @NotNull
+    private List<String> transientMessages = Arrays.asList(
+        "Stale file handle",
+        "Input/output error",
+        "Resource temporarily unavailable",
+        "Connection timed out",
+        "Interrupted system call",
+        "No locks available");
+}
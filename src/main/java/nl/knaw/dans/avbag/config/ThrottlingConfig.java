@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ThrottlingConfig {
+
+    @Valid
+    @NotNull
+    private ThrottleConfig input = new ThrottleConfig();
+
+    @Valid
+    @NotNull
+    private ThrottleConfig darkarchive = new ThrottleConfig();
+
+    @Valid
+    @NotNull
+    private ThrottleConfig springfield = new ThrottleConfig();
+
+    @Valid
+    @NotNull
+    private ThrottleConfig staging = new ThrottleConfig();
+
+    @Valid
+    @NotNull
+    private ThrottleConfig output = new ThrottleConfig();
+}
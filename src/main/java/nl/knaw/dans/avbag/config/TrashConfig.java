@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+import java.nio.file.Path;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TrashConfig {
+
+    /**
+     * Directory on the file system of the inbox to which converted input is renamed, to be deleted in the background. Without it, the input is deleted
+     * before the next bag is converted.
+     */
+    private Path dir;
+
+    /**
+     * Number of directories deleted from the trash in parallel.
+     */
+    @Min(1)
+    private int threads = 2;
+}
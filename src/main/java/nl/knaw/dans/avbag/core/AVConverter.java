@@ -15,28 +15,54 @@
  */
 package nl.knaw.dans.avbag.core;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import nl.knaw.dans.bagit.exceptions.InvalidBagitFileFormatException;
-import nl.knaw.dans.bagit.exceptions.MaliciousPathException;
-import nl.knaw.dans.bagit.exceptions.UnparsableVersionException;
-import nl.knaw.dans.bagit.exceptions.UnsupportedAlgorithmException;
+import nl.knaw.dans.avbag.core.BagReport.Stage;
+import nl.knaw.dans.avbag.core.BagReport.Status;
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
 import org.apache.commons.io.FileUtils;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.text.MessageFormat.format;
-import static org.apache.commons.io.FileUtils.copyDirectory;
+import static nl.knaw.dans.avbag.core.StorageIo.copyDirectory;
 
 @Slf4j
 public class AVConverter {
@@ -50,9 +76,105 @@ public class AVConverter {
     private final PseudoFileSources pseudoFileSources;
     private final boolean keepInput;
 
-    private long processed = 0L;
-    private long createdBags = 0L;
-    private long failedBags = 0L;
+    /**
+     * When set, only the bag parents in this shard are converted, each claimed with an {@link InboxLock} so that hosts sharing the inbox never convert the
+     * same bag parent. When not set, all bag parents are converted and no lock files are written.
+     */
+    @Setter
+    private Shard shard;
+
+    /**
+     * When set, only the bag parent with this name is converted.
+     */
+    @Setter
+    private String onlyBagParent;
+
+    @Setter
+    @NonNull
+    private BagTransfer bagTransfer = new BagTransfer(4);
+
+    /**
+     * When set, a report per bag parent is written to this directory at the end of {@link #convertAll()}, see {@link BagReport}.
+     */
+    @Setter
+    private Path reportDir;
+
+    private final List<BagReport> reports = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The time between two lines of {@link Progress}, none are logged if null or zero.
+     */
+    @Setter
+    private Duration progressInterval;
+
+    /**
+     * Where the stage timers and the byte counters of the run go, see {@link #registerMetrics(MetricRegistry)}; null for none.
+     */
+    @Setter
+    private MetricRegistry metricRegistry;
+
+    /**
+     * Whether the payload is copied into the staging directory or linked.
+     */
+    @Setter
+    @NonNull
+    private PayloadStaging payloadStaging = PayloadStaging.COPY;
+
+    /**
+     * Manifest algorithms added to every revision that does not have them yet, next to those of the input bag.
+     */
+    @Setter
+    @NonNull
+    private Set<SupportedAlgorithm> extraManifestAlgorithms = Collections.emptySet();
+
+    /**
+     * Fetches the Springfield files of upcoming bag parents, null for none.
+     */
+    @Setter
+    private Prefetcher prefetcher;
+
+    /**
+     * Whether a Springfield file added to several bags is copied once and hard-linked, see {@link SpringfieldStore}.
+     */
+    @Setter
+    private boolean deduplicateSpringfieldFiles;
+
+    private SpringfieldStore springfieldStore;
+
+    /**
+     * Where converted input goes, null to delete it before the next bag is converted.
+     */
+    @Setter
+    private Trash trash;
+
+    /**
+     * When to convert a bag again after a failure. The partial output of a failed attempt is always removed.
+     */
+    @Setter
+    @NonNull
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+
+    /**
+     * The order of the bag parents, see {@link SchedulingPolicy}.
+     */
+    @Setter
+    @NonNull
+    private SchedulingPolicy schedulingPolicy = SchedulingPolicy.DIRECTORY;
+
+    /**
+     * The number of bag parents converted at the same time.
+     */
+    @Setter
+    private int parallelism = 1;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong createdBags = new AtomicLong();
+    private final AtomicLong failedBags = new AtomicLong();
+    private final AtomicLong skippedBags = new AtomicLong();
+    private final AtomicLong queuedBags = new AtomicLong();
+    private final AtomicInteger inFlightBags = new AtomicInteger();
+    private final AtomicLong deduplicatedFiles = new AtomicLong();
+    private final AtomicLong deduplicatedBytes = new AtomicLong();
 
     public AVConverter(Path inputDir, Path outputDir, Path stagingDir, PseudoFileSources pseudoFileSources, boolean keepInput) {
         this.inputDir = inputDir.toAbsolutePath();
@@ -66,27 +188,272 @@ public class AVConverter {
         this(inputDir, outputDir, stagingDir, pseudoFileSources, false);
     }
 
+    /**
+     * Registers the bag counts as gauges avbag.bags.&lt;count&gt;, the wall time of each {@link Stage} of a bag as timer avbag.stage.&lt;stage&gt; and the
+     * byte counters of the {@link Progress} of the run. With
+     * deduplication, the Springfield files hard-linked instead of copied and their bytes are the gauges avbag.dedup.files and avbag.dedup.saved_bytes.
+     */
+    public void registerMetrics(MetricRegistry registry) {
+        registry.register("avbag.bags.processed", (Gauge<Long>) processed::get);
+        registry.register("avbag.bags.created", (Gauge<Long>) createdBags::get);
+        registry.register("avbag.bags.failed", (Gauge<Long>) failedBags::get);
+        registry.register("avbag.bags.skipped", (Gauge<Long>) skippedBags::get);
+        registry.register("avbag.bags.queued", (Gauge<Long>) queuedBags::get);
+        registry.register("avbag.bags.in_flight", (Gauge<Integer>) inFlightBags::get);
+        registry.register("avbag.dedup.files", (Gauge<Long>) deduplicatedFiles::get);
+        registry.register("avbag.dedup.saved_bytes", (Gauge<Long>) deduplicatedBytes::get);
+        metricRegistry = registry;
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getCreatedBags() {
+        return createdBags.get();
+    }
+
+    public long getFailedBags() {
+        return failedBags.get();
+    }
+
+    public long getSkippedBags() {
+        return skippedBags.get();
+    }
+
     public void convertAll() throws IOException {
         try (java.util.stream.Stream<Path> pathStream = Files.list(stagingDir)) {
-            if (pathStream.findAny().isPresent()) {
+            // a store left behind by a crash holds no bags
+            if (pathStream.anyMatch(path -> !path.getFileName().toString().equals(SpringfieldStore.DIR_NAME))) {
                 throw new IllegalStateException("The staging directory is not empty. Please empty the directory and try again.");
             }
         }
-        try (java.util.stream.Stream<Path> pathStream = Files.walk(inputDir, 2)) {
-            pathStream.filter(this::notSelfOrChild)
-                .forEach(this::convertOne);
+        List<Path> inputBags = findInputBags();
+        Map<Path, BagSize> sizes = measure(inputBags);
+        Map<Path, List<Path>> bagsPerParent = inputBags.stream().collect(Collectors.groupingBy(Path::getParent, LinkedHashMap::new, Collectors.toList()));
+        Map<Path, BagSize> parentSizes = new HashMap<>();
+        bagsPerParent.forEach((bagParent, bags) -> parentSizes.put(bagParent,
+            bags.stream().map(bag -> sizes.getOrDefault(bag, BagSize.UNKNOWN)).reduce(BagSize.UNKNOWN, BagSize::plus)));
+        List<Path> bagParents = schedulingPolicy.order(parentSizes);
+        if (prefetcher != null) {
+            prefetcher.schedule(bagParents.stream().map(bagParent -> bagParent.getFileName().toString()).collect(Collectors.toList()));
+        }
+        long totalBytes = parentSizes.values().stream().mapToLong(BagSize::getTotal).sum();
+        springfieldStore = deduplicateSpringfieldFiles ? new SpringfieldStore(stagingDir, countSpringfieldUses(bagParents)) : null;
+        try (Progress progress = new Progress(inputBags.size(), totalBytes, progressInterval)) {
+            if (metricRegistry != null) {
+                progress.registerMetrics(metricRegistry);
+            }
+            queuedBags.set(inputBags.size());
+            if (parallelism <= 1) {
+                for (Path bagParent : bagParents) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Interrupted while converting " + inputDir);
+                    }
+                    convertBagParent(bagsPerParent.get(bagParent), sizes, progress);
+                }
+            }
+            else {
+                convertInParallel(bagParents.stream().map(bagsPerParent::get).collect(Collectors.toList()), sizes, progress);
+            }
         }
-        System.out.println(format("Conversion finished. Bags processed={6}, failed={7}, created={8}. In directories: {3}={0}, {4}={1}, {5}={2}",
+        finally {
+            closeSpringfieldStore();
+        }
+        System.out.println(format("Conversion finished. Bags processed={6}, failed={7}, created={8}, skipped={9}. In directories: {3}={0}, {4}={1}, {5}={2}",
             getSubdirCount(inputDir),
             getSubdirCount(stagingDir),
             getSubdirCount(outputDir),
             inputDir,
             stagingDir,
             outputDir,
-            processed,
-            failedBags,
-            createdBags
+            processed.get(),
+            failedBags.get(),
+            createdBags.get(),
+            skippedBags.get()
         ));
+        if (reportDir != null) {
+            writeReports();
+        }
+    }
+
+    /**
+     * @return per Springfield file, by its real path as {@link SpringfieldStore} identifies it, the number of references to it of the bag parents in the
+     * run
+     */
+    private Map<Path, Integer> countSpringfieldUses(List<Path> bagParents) {
+        Map<Path, Integer> uses = new HashMap<>();
+        for (Path bagParent : bagParents) {
+            for (Path file : pseudoFileSources.getSpringFieldFiles(bagParent.getFileName().toString()).values()) {
+                try {
+                    uses.merge(file.toRealPath(), 1, Integer::sum);
+                }
+                catch (IOException e) {
+                    // the bags referring to it will fail, there is nothing to share
+                    log.debug("Cannot resolve Springfield file {}", file, e);
+                }
+            }
+        }
+        return uses;
+    }
+
+    private void closeSpringfieldStore() throws IOException {
+        if (springfieldStore == null) {
+            return;
+        }
+        log.info("Shared Springfield files copied: {}, hard-linked instead of copied: {} ({} bytes)",
+            springfieldStore.getStoredFiles(), springfieldStore.getLinkedFiles(), springfieldStore.getSavedBytes());
+        deduplicatedFiles.addAndGet(springfieldStore.getLinkedFiles());
+        deduplicatedBytes.addAndGet(springfieldStore.getSavedBytes());
+        springfieldStore.close();
+        springfieldStore = null;
+    }
+
+    private void convertBagParent(List<Path> inputBags, Map<Path, BagSize> sizes, Progress progress) {
+        String bagParent = inputBags.get(0).getParent().getFileName().toString();
+        if (prefetcher != null) {
+            prefetcher.started(bagParent);
+        }
+        try {
+            for (Path inputBag : inputBags) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // the remaining bags stay in the inbox
+                    log.info("{} interrupted", bagParent);
+                    return;
+                }
+                convertOne(inputBag, progress);
+                progress.bagDone(sizes.getOrDefault(inputBag, BagSize.UNKNOWN).getTotal());
+                queuedBags.decrementAndGet();
+            }
+        }
+        finally {
+            if (prefetcher != null) {
+                prefetcher.done(bagParent);
+            }
+        }
+    }
+
+    /**
+     * Converts the bag parents on {@link #parallelism} threads, starting them in the given order. The bags of one bag parent are converted by the same
+     * thread, one after the other, because they share a directory in staging.
+     */
+    private void convertInParallel(List<List<Path>> bagParents, Map<Path, BagSize> sizes, Progress progress) throws IOException {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> new Thread(runnable, "convert-" + threadNumber.incrementAndGet()));
+        try {
+            List<Future<?>> conversions = new ArrayList<>();
+            for (List<Path> inputBags : bagParents) {
+                conversions.add(executor.submit(() -> convertBagParent(inputBags, sizes, progress)));
+            }
+            for (Future<?> conversion : conversions) {
+                conversion.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while converting " + inputDir, e);
+        }
+        catch (ExecutionException e) {
+            // the errors that stop a sequential run stop a parallel run too
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Could not convert " + inputDir, e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeReports() throws IOException {
+        String name = "conversion-report-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss"));
+        Files.createDirectories(reportDir);
+        BagReport.writeCsv(reports, reportDir.resolve(name + ".csv"));
+        BagReport.writeJson(reports, reportDir.resolve(name + ".json"));
+        log.info("Report of {} bag parents written to {}", reports.size(), reportDir.resolve(name + ".csv|json"));
+    }
+
+    private List<Path> findInputBags() throws IOException {
+        List<Path> bagParents;
+        try (Stream<Path> pathStream = Files.list(inputDir)) {
+            bagParents = pathStream
+                .filter(Files::isDirectory)
+                .filter(this::inShard)
+                .filter(bagParent -> onlyBagParent == null || onlyBagParent.equals(bagParent.getFileName().toString()))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        List<Path> inputBags = new ArrayList<>();
+        for (Path bagParent : bagParents) {
+            try (Stream<Path> pathStream = Files.list(bagParent)) {
+                pathStream.sorted().forEach(inputBags::add);
+            }
+            catch (NoSuchFileException e) {
+                // converted by another host since we listed the inbox
+                log.debug("{} disappeared from the inbox", bagParent.getFileName());
+            }
+        }
+        return inputBags;
+    }
+
+    /**
+     * Measures the bytes to process per input bag as the size of the bag plus the Springfield files of its bag parent, which are counted with the first
+     * bag of the bag parent. Skipped when neither progress nor scheduling needs them, because it takes a walk over the inbox.
+     */
+    private Map<Path, BagSize> measure(List<Path> inputBags) throws IOException {
+        Map<Path, BagSize> sizes = new HashMap<>();
+        if ((progressInterval == null || progressInterval.isZero()) && !schedulingPolicy.needsSizes()) {
+            return sizes;
+        }
+        Set<Path> bagParents = new HashSet<>();
+        for (Path inputBag : inputBags) {
+            long inputBytes = 0L;
+            long springfieldBytes = 0L;
+            try {
+                inputBytes = payloadBytes(inputBag);
+            }
+            catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+                // converted by another host since we listed the inbox
+                log.debug("Could not measure the size of {}", inputBag, e);
+            }
+            if (bagParents.add(inputBag.getParent())) {
+                for (Path springfieldFile : pseudoFileSources.getSpringFieldFiles(inputBag.getParent().getFileName().toString()).values()) {
+                    if (Files.isRegularFile(springfieldFile)) {
+                        springfieldBytes += Files.size(springfieldFile);
+                    }
+                }
+            }
+            sizes.put(inputBag, new BagSize(inputBytes, springfieldBytes));
+        }
+        return sizes;
+    }
+
+    /**
+     * @return the size of the payload according to the Payload-Oxum in bag-info.txt, which costs one small read instead of a walk over the bag; the size
+     * of the bag directory if there is no Payload-Oxum
+     */
+    private static long payloadBytes(Path inputBag) throws IOException {
+        try (Stream<String> lines = Files.lines(inputBag.resolve("bag-info.txt"), StandardCharsets.UTF_8)) {
+            Optional<String> oxum = lines
+                .filter(line -> line.startsWith("Payload-Oxum:"))
+                .map(line -> line.substring("Payload-Oxum:".length()).trim())
+                .findFirst();
+            if (oxum.isPresent()) {
+                // octets.streams
+                return Long.parseLong(oxum.get().split("\\.")[0]);
+            }
+        }
+        catch (NoSuchFileException e) {
+            // bag-info.txt is optional
+        }
+        return FileUtils.sizeOfDirectory(inputBag.toFile());
+    }
+
+    private boolean inShard(Path bagParent) {
+        return shard == null || shard.contains(bagParent.getFileName().toString());
     }
 
     private long getSubdirCount(Path inputDir) throws IOException {
@@ -95,67 +462,258 @@ public class AVConverter {
         }
     }
 
-    private boolean notSelfOrChild(Path path) {
-        return !path.toAbsolutePath().getParent().equals(inputDir) && !path.equals(inputDir);
+    private void convertOne(Path inputBag, Progress progress) {
+        if (shard == null) {
+            convertUnlocked(inputBag, progress);
+            return;
+        }
+        Path bagParent = inputBag.getParent();
+        Optional<InboxLock> lock;
+        try {
+            lock = InboxLock.tryAcquire(bagParent);
+        }
+        catch (IOException e) {
+            log.error(MessageFormat.format("{0} failed, could not be locked", bagParent.getFileName()), e);
+            failedBags.incrementAndGet();
+            return;
+        }
+        if (!lock.isPresent()) {
+            skippedBags.incrementAndGet();
+            return;
+        }
+        try (InboxLock ignored = lock.get()) {
+            if (!Files.exists(inputBag)) {
+                // converted by another host between listing and locking
+                skippedBags.incrementAndGet();
+            }
+            else if (Files.exists(outputDir.resolve(bagParent.getFileName()))) {
+                // converted by another process between listing and locking, with --keep-input
+                log.info("{} skipped, already in {}", bagParent.getFileName(), outputDir);
+                skippedBags.incrementAndGet();
+            }
+            else {
+                convertUnlocked(inputBag, progress);
+            }
+        }
+        catch (IOException e) {
+            log.warn("Could not remove the lock of {}", bagParent.getFileName(), e);
+        }
     }
 
-    private void convertOne(Path inputBag) {
+    private void convertUnlocked(Path inputBag, Progress progress) {
         Path bagParent = inputBag.getParent().getFileName();
         if (outputDir.resolve(bagParent).toFile().exists()) {
             throw new IllegalStateException(format("Output directory already exists: {0}", outputDir.resolve(bagParent)));
         }
+        BagReport report = new BagReport(bagParent.toString(), progress).start();
+        inFlightBags.incrementAndGet();
         try {
-            PlaceHolders ph = new PlaceHolders(inputBag);
-            if (ph.hasSameFileIds(pseudoFileSources)) {
-                createOutputBags(inputBag, ph);
+            for (int attempt = 1; ; attempt++) {
+                report.setAttempts(attempt);
+                Rollback rollback = new Rollback();
+                try {
+                    convertAttempt(inputBag, report, rollback);
+                    return;
+                }
+                catch (Exception e) {
+                    boolean rolledBack = rollback.run();
+                    if (rolledBack && attempt < retryPolicy.getMaxAttempts() && retryPolicy.isTransient(e)) {
+                        long delay = retryPolicy.delayMillis(attempt);
+                        log.warn("{} failed with a transient error in attempt {} of {}, retrying in {} ms: {}",
+                            bagParent, attempt, retryPolicy.getMaxAttempts(), delay, e.toString());
+                        if (sleep(delay)) {
+                            continue;
+                        }
+                    }
+                    fail(inputBag, report, e, rolledBack);
+                    return;
+                }
             }
         }
-        catch (Exception e) {
+        finally {
+            inFlightBags.decrementAndGet();
+            report.end();
+            reports.add(report);
+            if (metricRegistry != null) {
+                report.getMillis().forEach((stage, millis) ->
+                    metricRegistry.timer("avbag.stage." + stage.name().toLowerCase()).update(millis, TimeUnit.MILLISECONDS));
+            }
+        }
+    }
+
+    private void convertAttempt(Path inputBag, BagReport report, Rollback rollback) throws Exception {
+        BagSession input;
+        try (BagReport.Timer ignored = report.time(Stage.READ)) {
+            input = BagSession.read(inputBag);
+        }
+        input.setPayloadStaging(payloadStaging);
+        PlaceHolders ph;
+        try (BagReport.Timer ignored = report.time(Stage.PLACE_HOLDER_SCAN)) {
+            ph = new PlaceHolders(input);
+        }
+        report.setFiles(input.getFilesXml().getElementsByTagName("file").getLength());
+        report.setPlaceHolders(ph.getFilePaths().size());
+        if (ph.hasSameFileIds(pseudoFileSources)) {
+            createOutputBags(input, ph, report, rollback);
+            report.setStatus(Status.CONVERTED);
+        }
+        else {
+            report.setFailure("Place holders do not match sources.csv");
+        }
+    }
+
+    private void fail(Path inputBag, BagReport report, Exception e, boolean rolledBack) {
+        if (rolledBack) {
+            log.error(MessageFormat.format("{0} failed, its partial output is removed", inputBag.getParent().getFileName()), e);
+        }
+        else {
             log.error(MessageFormat.format(
                 "{0} failed, it may or may not have (incomplete) bags in {1}",
                 inputBag.getParent().getFileName(),
                 stagingDir
             ), e);
-            failedBags++;
         }
+        failedBags.incrementAndGet();
+        report.setStatus(Status.FAILED);
+        report.setFailure(e.toString());
     }
 
-    private void createOutputBags(Path inputBagDir, PlaceHolders placeHolders)
-        throws IOException, TransformerException, MaliciousPathException, UnparsableVersionException, UnsupportedAlgorithmException,
-        InvalidBagitFileFormatException, NoSuchAlgorithmException, ParserConfigurationException, SAXException {
-        SpringfieldFiles springfieldFiles = new SpringfieldFiles(inputBagDir, pseudoFileSources);
+    /**
+     * @return false if interrupted
+     */
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void createOutputBags(BagSession input, PlaceHolders placeHolders, BagReport report, Rollback rollback)
+        throws IOException, TransformerException, NoSuchAlgorithmException, XMLStreamException {
+        ConversionEvents.BagEvent event = new ConversionEvents.BagEvent();
+        event.begin();
+        int created = createAndMoveOutputBags(input, placeHolders, report, rollback);
+        if (event.shouldCommit()) {
+            event.bag = report.getBagParent();
+            event.bagDir = input.getBagDir().toString();
+            event.createdBags = created;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the number of bags created in the output directory
+     */
+    private int createAndMoveOutputBags(BagSession input, PlaceHolders placeHolders, BagReport report, Rollback rollback)
+        throws IOException, TransformerException, NoSuchAlgorithmException, XMLStreamException {
+        Path inputBagDir = input.getBagDir();
+        SpringfieldFiles springfieldFiles = new SpringfieldFiles(input, placeHolders, pseudoFileSources);
+        springfieldFiles.setPrefetcher(prefetcher);
+        springfieldFiles.setStore(springfieldStore);
 
         String inputBagParentName = inputBagDir.getParent().getFileName().toString();
         Path outputBagRevision1 = stagingDir.resolve(inputBagParentName).resolve(inputBagDir.getFileName());
         Path outputBagRevision2 = stagingDir.resolve(UUID.randomUUID().toString()).resolve(UUID.randomUUID().toString());
 
         log.info("Creating revision 1: {} ### {}", inputBagParentName, outputBagRevision1.getParent().getFileName());
-        copyDirectory(inputBagDir.toFile(), outputBagRevision1.toFile());
-        new FileRemover(outputBagRevision1).removeFiles(new NoneNoneAndPlaceHolderFilter(placeHolders));
+        report.setRevision1(inputBagParentName);
+        rollback.add(outputBagRevision1.getParent(), StorageRoot.STAGING);
+        Set<SupportedAlgorithm> missingManifests = input.missingManifests(extraManifestAlgorithms);
+        Map<Path, Map<SupportedAlgorithm, String>> checksums = Collections.emptyMap();
+        try (BagReport.Timer ignored = report.time(Stage.REVISION1_COPY)) {
+            if (missingManifests.isEmpty()) {
+                stage(inputBagDir, outputBagRevision1, StorageRoot.INPUT);
+            }
+            else {
+                // the only pass over the payload of the input
+                checksums = StorageIo.copyHashingPayload(inputBagDir, outputBagRevision1, StorageRoot.INPUT, StorageRoot.STAGING,
+                    payloadStaging == PayloadStaging.LINK, missingManifests);
+            }
+        }
+        BagSession revision1 = input.copyTo(outputBagRevision1);
+        revision1.addManifests(missingManifests, checksums);
+        try (BagReport.Timer ignored = report.time(Stage.PRUNE)) {
+            FileElements fileElements = FileElements.index(revision1.getFilesXml(), placeHolders.getFilePaths(), Collections.emptySet(), true);
+            report.setRemovedFiles(new FileRemover(revision1).removeFiles(new NoneNoneAndPlaceHolderFilter(fileElements)).size());
+        }
+        try (BagReport.Timer ignored = report.time(Stage.MANIFEST_UPDATE)) {
+            revision1.write();
+        }
 
         log.info("Creating revision 2: {} ### {}", inputBagParentName, outputBagRevision2.getParent().getFileName());
-        copyDirectory(outputBagRevision1.toFile(), outputBagRevision2.toFile());
+        rollback.add(outputBagRevision2.getParent(), StorageRoot.STAGING);
+        try (BagReport.Timer ignored = report.time(Stage.REVISION2_COPY)) {
+            stage(outputBagRevision1, outputBagRevision2, StorageRoot.STAGING);
+        }
 
+        BagSession revision2 = null;
         if (springfieldFiles.hasFilesToAdd()) {
-            springfieldFiles.addFiles(placeHolders, outputBagRevision2, outputBagRevision1);
+            report.setRevision2(outputBagRevision2.getParent().getFileName().toString());
+            revision2 = revision1.copyTo(outputBagRevision2);
+            try (BagReport.Timer ignored = report.time(Stage.SPRINGFIELD_ADD)) {
+                report.setAddedFiles(springfieldFiles.addFiles(placeHolders, revision2, outputBagRevision1).size());
+            }
+            try (BagReport.Timer ignored = report.time(Stage.MANIFEST_UPDATE)) {
+                revision2.write();
+            }
         }
 
         // Move the bags to the output directory
-        moveFromStagingToOutputDir(outputBagRevision1);
-        createdBags++;
-        if (springfieldFiles.hasFilesToAdd()) {
-            moveFromStagingToOutputDir(outputBagRevision2);
-            createdBags++;
+        int created = 0;
+        try (BagReport.Timer ignored = report.time(Stage.MOVE)) {
+            moveFromStagingToOutputDir(revision1, rollback);
+            created++;
+            if (revision2 != null) {
+                moveFromStagingToOutputDir(revision2, rollback);
+                created++;
+            }
         }
-        processed++;
+        // the point of no return: from here on the input is deleted
+        rollback.commit();
+        createdBags.addAndGet(created);
+        processed.incrementAndGet();
         if (!keepInput) {
-            FileUtils.deleteDirectory(inputBagDir.getParent().toFile());
+            if (trash != null) {
+                trash.dispose(inputBagDir.getParent());
+            }
+            else {
+                StorageIo.deleteDirectory(inputBagDir.getParent(), StorageRoot.INPUT);
+            }
         }
+        return created;
     }
 
-    private void moveFromStagingToOutputDir(Path bagDir) throws IOException {
-        Path source = bagDir.getParent();
-        Path destination = outputDir.resolve(source.getFileName());
-        FileUtils.moveDirectory(source.toFile(), destination.toFile());
+    private void stage(Path source, Path target, StorageRoot from) throws IOException {
+        if (payloadStaging == PayloadStaging.LINK) {
+            StorageIo.linkPayload(source, target, from, StorageRoot.STAGING);
+        }
+        else {
+            copyDirectory(source, target, from, StorageRoot.STAGING);
+        }
+    }
+
+    private void moveFromStagingToOutputDir(BagSession bag, Rollback rollback) throws IOException {
+        Path destination = outputDir.resolve(bag.getBagDir().getParent().getFileName());
+        if (Files.exists(destination)) {
+            throw new FileAlreadyExistsException(destination.toString());
+        }
+        try {
+            if (payloadStaging == PayloadStaging.LINK) {
+                bagTransfer.assemble(bag, destination);
+            }
+            else {
+                bagTransfer.move(bag, destination);
+            }
+        }
+        finally {
+            // also when the transfer failed after the rename, for example while syncing
+            if (Files.exists(destination)) {
+                rollback.add(destination, StorageRoot.OUTPUT);
+            }
+        }
     }
 }
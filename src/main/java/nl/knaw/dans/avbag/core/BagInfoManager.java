@@ -15,66 +15,44 @@
  */
 package nl.knaw.dans.avbag.core;
 
-import nl.knaw.dans.bagit.domain.Bag;
 import nl.knaw.dans.bagit.domain.Metadata;
-import nl.knaw.dans.bagit.exceptions.InvalidBagitFileFormatException;
-import nl.knaw.dans.bagit.exceptions.MaliciousPathException;
-import nl.knaw.dans.bagit.exceptions.UnparsableVersionException;
-import nl.knaw.dans.bagit.exceptions.UnsupportedAlgorithmException;
-import nl.knaw.dans.bagit.reader.BagReader;
-import nl.knaw.dans.bagit.writer.MetadataWriter;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
-import java.util.List;
 
-import static nl.knaw.dans.avbag.core.XmlUtil.readXml;
 import static org.apache.commons.lang3.ObjectUtils.isEmpty;
 
 public class BagInfoManager {
 
-    public static Bag getBag(Path bagDir)
-        throws IOException, UnparsableVersionException, MaliciousPathException, UnsupportedAlgorithmException, InvalidBagitFileFormatException, ParserConfigurationException, SAXException {
-        return new BagReader().read(bagDir);
-    }
-
-    public static Bag updateBagVersion(Path newBagDir, Path previousBagDir)
-        throws IOException, UnparsableVersionException, MaliciousPathException, UnsupportedAlgorithmException, InvalidBagitFileFormatException, ParserConfigurationException, SAXException {
+    /**
+     * Updates bag-info.txt of the session to make it a new version of the previous bag. It is written with the session.
+     */
+    public static void updateBagVersion(BagSession newBag, Path previousBagDir) throws IOException, XMLStreamException {
         String now = ZonedDateTime
             .now(ZoneId.systemDefault())
             .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-        Bag newBag = new BagReader().read(newBagDir);
-        Metadata bagInfo = newBag.getMetadata();
+        Metadata bagInfo = newBag.getBag().getMetadata();
         bagInfo.remove("Is-Version-Of");
         bagInfo.remove("Created");
         bagInfo.add("Is-Version-Of", "urn:uuid:" + previousBagDir.getParent().getFileName());
         bagInfo.add("Created", now);
         if (isEmpty(bagInfo.get("Base-URN")) || isEmpty(bagInfo.get("Base-DOI"))) {
             // once added for the second bag, we don't need to add for subsequent bags
-            List<String> idTypes = Arrays.asList("DOI", "URN");
-            NodeList idElements = ((Element) readXml(newBagDir.resolve("metadata/dataset.xml"))
-                .getElementsByTagName("ddm:dcmiMetadata").item(0))
-                .getElementsByTagName("dct:identifier");
-            for (int i = 0; i < idElements.getLength(); i++) {
-                Element id = (Element) idElements.item(i);
-                String idType = id.getAttribute("xsi:type")
-                    .replace("id-type:", "");
-                if (idTypes.contains(idType)) {
-                    bagInfo.remove("Base-" + idType);
-                    bagInfo.add("Base-" + idType, id.getTextContent());
-                }
-            }
+            DatasetIdentifiers identifiers = newBag.getDatasetIdentifiers();
+            setBaseIdentifier(bagInfo, "DOI", identifiers.getDoi());
+            setBaseIdentifier(bagInfo, "URN", identifiers.getUrn());
+        }
+        newBag.setBagInfoModified(true);
+    }
+
+    private static void setBaseIdentifier(Metadata bagInfo, String idType, String value) {
+        if (value != null) {
+            bagInfo.remove("Base-" + idType);
+            bagInfo.add("Base-" + idType, value);
         }
-        MetadataWriter.writeBagMetadata(bagInfo, newBag.getVersion(), newBag.getRootDir(), StandardCharsets.UTF_8);
-        return newBag;
     }
 }
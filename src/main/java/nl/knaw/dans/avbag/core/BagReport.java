@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * What happened to one bag parent in a run: the revisions created, file counts, bytes moved by {@link StorageIo} and the wall time of each stage.
+ * <p>
+ * The report of the bag parent being converted is bound to the converting thread, so that {@link StorageIo} can count bytes without the report being
+ * passed around. Tasks handed to other threads take it along with {@link #propagate(Callable)}. The bytes are also counted in the {@link Progress} of the
+ * run, if any.
+ */
+@Getter
+public class BagReport {
+    public enum Status {
+        CONVERTED,
+        // the place holders do not match sources.csv, see the log
+        NOT_CONVERTED,
+        FAILED
+    }
+
+    public enum Stage {
+        READ,
+        PLACE_HOLDER_SCAN,
+        REVISION1_COPY,
+        PRUNE,
+        REVISION2_COPY,
+        SPRINGFIELD_ADD,
+        MANIFEST_UPDATE,
+        MOVE
+    }
+
+    private static final ThreadLocal<BagReport> current = new ThreadLocal<>();
+
+    private final String bagParent;
+    @Setter
+    private String revision1;
+    @Setter
+    private String revision2;
+    @Setter
+    private Status status = Status.NOT_CONVERTED;
+    @Setter
+    private int attempts;
+    @Setter
+    private int files;
+    @Setter
+    private int placeHolders;
+    @Setter
+    private int removedFiles;
+    @Setter
+    private int addedFiles;
+    @Getter(AccessLevel.NONE)
+    private final LongAdder bytesCopied = new LongAdder();
+    @Getter(AccessLevel.NONE)
+    private final LongAdder bytesHashed = new LongAdder();
+    @Getter(AccessLevel.NONE)
+    private final LongAdder bytesDeleted = new LongAdder();
+    @Getter(AccessLevel.NONE)
+    private final LongAdder fsyncNanos = new LongAdder();
+    private final Map<Stage, Long> millis = Collections.synchronizedMap(new EnumMap<>(Stage.class));
+    @Setter
+    private String failure;
+    @Getter(AccessLevel.NONE)
+    private final Progress progress;
+
+    public BagReport(String bagParent) {
+        this(bagParent, null);
+    }
+
+    /**
+     * @param progress the progress of the run, or null
+     */
+    public BagReport(String bagParent, Progress progress) {
+        this.bagParent = bagParent;
+        this.progress = progress;
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied.sum();
+    }
+
+    public long getBytesHashed() {
+        return bytesHashed.sum();
+    }
+
+    public long getBytesDeleted() {
+        return bytesDeleted.sum();
+    }
+
+    /**
+     * @return the time spent in {@link Fsync}, part of the time of the stages
+     */
+    public long getFsyncMillis() {
+        return fsyncNanos.sum() / 1_000_000;
+    }
+
+    /**
+     * Binds this report to the current thread, until {@link #end()}.
+     */
+    public BagReport start() {
+        current.set(this);
+        return this;
+    }
+
+    public void end() {
+        current.remove();
+    }
+
+    /**
+     * @param stage the stage to time
+     * @return a timer that adds the time until it is closed to the stage
+     */
+    public Timer time(Stage stage) {
+        return new Timer(stage);
+    }
+
+    /**
+     * Also emits a {@link ConversionEvents.StageEvent}.
+     */
+    public final class Timer implements AutoCloseable {
+        private final Stage stage;
+        private final long start = System.nanoTime();
+        private final ConversionEvents.StageEvent event = new ConversionEvents.StageEvent();
+
+        private Timer(Stage stage) {
+            this.stage = stage;
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            millis.merge(stage, (System.nanoTime() - start) / 1_000_000, Long::sum);
+            if (event.shouldCommit()) {
+                event.bag = bagParent;
+                event.stage = stage.name();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * @return the bag parent of the report of the current thread, or null
+     */
+    static String currentBagParent() {
+        BagReport report = current.get();
+        return report == null ? null : report.bagParent;
+    }
+
+    static boolean isActive() {
+        return current.get() != null;
+    }
+
+    static void countCopied(long bytes) {
+        BagReport report = current.get();
+        if (report != null) {
+            report.bytesCopied.add(bytes);
+            if (report.progress != null) {
+                report.progress.countRead(bytes);
+                report.progress.countWritten(bytes);
+            }
+        }
+    }
+
+    /**
+     * @param read whether the bytes were read for the checksums only, rather than copied as well
+     */
+    static void countHashed(long bytes, boolean read) {
+        BagReport report = current.get();
+        if (report != null) {
+            report.bytesHashed.add(bytes);
+            if (report.progress != null) {
+                if (read) {
+                    report.progress.countRead(bytes);
+                }
+                report.progress.countHashed(bytes);
+            }
+        }
+    }
+
+    static void countDeleted(long bytes) {
+        BagReport report = current.get();
+        if (report != null) {
+            report.bytesDeleted.add(bytes);
+        }
+    }
+
+    static void countFsync(long nanos) {
+        BagReport report = current.get();
+        if (report != null) {
+            report.fsyncNanos.add(nanos);
+        }
+    }
+
+    /**
+     * @return the task, running with the report of the current thread, if any
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        BagReport report = current.get();
+        if (report == null) {
+            return task;
+        }
+        return () -> {
+            BagReport previous = current.get();
+            current.set(report);
+            try {
+                return task.call();
+            }
+            finally {
+                current.set(previous);
+            }
+        };
+    }
+
+    public static void writeCsv(List<BagReport> reports, Path file) throws IOException {
+        List<String> header = new ArrayList<>(Arrays.asList("bag_parent", "status", "attempts", "revision1", "revision2", "files", "place_holders", "removed_files",
+            "added_files", "bytes_copied", "bytes_hashed", "bytes_deleted", "fsync_ms"));
+        for (Stage stage : Stage.values()) {
+            header.add(stage.name().toLowerCase() + "_ms");
+        }
+        header.add("failure");
+        try (Writer writer = Files.newBufferedWriter(file, UTF_8);
+            CSVPrinter csv = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(header.toArray(new String[0])))) {
+            for (BagReport report : reports) {
+                List<Object> record = new ArrayList<>(Arrays.asList(report.bagParent, report.status, report.attempts, report.revision1, report.revision2, report.files,
+                    report.placeHolders, report.removedFiles, report.addedFiles, report.getBytesCopied(), report.getBytesHashed(), report.getBytesDeleted(),
+                    report.getFsyncMillis()));
+                for (Stage stage : Stage.values()) {
+                    record.add(report.millis.get(stage));
+                }
+                record.add(report.failure);
+                csv.printRecord(record);
+            }
+        }
+    }
+
+    public static void writeJson(List<BagReport> reports, Path file) throws IOException {
+        new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .writeValue(file.toFile(), reports);
+    }
+}
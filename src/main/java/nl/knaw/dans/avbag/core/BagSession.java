@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import nl.knaw.dans.bagit.domain.Bag;
+import nl.knaw.dans.bagit.domain.Manifest;
+import nl.knaw.dans.bagit.domain.Metadata;
+import nl.knaw.dans.bagit.exceptions.InvalidBagitFileFormatException;
+import nl.knaw.dans.bagit.exceptions.MaliciousPathException;
+import nl.knaw.dans.bagit.exceptions.UnparsableVersionException;
+import nl.knaw.dans.bagit.exceptions.UnsupportedAlgorithmException;
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
+import nl.knaw.dans.bagit.reader.BagReader;
+import nl.knaw.dans.bagit.writer.MetadataWriter;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * A bag and its files.xml held in memory while a revision is built. The input bag is read once; each revision is a copy of the previous session, updated
+ * in place by removals, additions and metadata changes, and written once with {@link #write()}.
+ * <p>
+ * The payload manifests are maintained alongside the changes: checksums of files carried over from the previous revision are reused and those of added
+ * files are calculated while they are copied, so the payload is never hashed again. Only the tag manifests are recalculated when writing.
+ */
+@Getter
+public class BagSession {
+    private final Path bagDir;
+    private final Bag bag;
+    private final Document filesXml;
+
+    /**
+     * Whether bag-info.txt must be written. Set by whoever changes the metadata of the bag.
+     */
+    @Setter
+    private boolean bagInfoModified;
+
+    /**
+     * Whether added payload files are copied or linked, see {@link PayloadStaging}.
+     */
+    @Setter
+    @NonNull
+    private PayloadStaging payloadStaging = PayloadStaging.COPY;
+
+    /**
+     * Shared by all copies of a session, as dataset.xml is the same in every revision of a bag.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicReference<DatasetIdentifiers> datasetIdentifiers;
+
+    private BagSession(Path bagDir, Bag bag, Document filesXml, AtomicReference<DatasetIdentifiers> datasetIdentifiers) {
+        this.bagDir = bagDir;
+        this.bag = bag;
+        this.filesXml = filesXml;
+        this.datasetIdentifiers = datasetIdentifiers;
+    }
+
+    public static BagSession read(Path bagDir)
+        throws IOException, UnparsableVersionException, MaliciousPathException, UnsupportedAlgorithmException, InvalidBagitFileFormatException, ParserConfigurationException,
+        SAXException {
+        return new BagSession(bagDir, new BagReader().read(bagDir), XmlUtil.readXml(bagDir.resolve("metadata/files.xml")), new AtomicReference<>());
+    }
+
+    /**
+     * @return the identifiers from dataset.xml, which is only read by the first session of a bag to ask for them
+     */
+    public DatasetIdentifiers getDatasetIdentifiers() throws IOException, XMLStreamException {
+        DatasetIdentifiers identifiers = datasetIdentifiers.get();
+        if (identifiers == null) {
+            identifiers = DatasetIdentifiers.read(bagDir.resolve("metadata/dataset.xml"));
+            datasetIdentifiers.set(identifiers);
+        }
+        return identifiers;
+    }
+
+    /**
+     * Creates a session for a copy of this bag in another directory. Nothing is read from or written to disk: the copy of the files themselves is up to the
+     * caller. Changes to the returned session do not affect this one.
+     *
+     * @param newBagDir the directory of the copy
+     * @return the session of the copy
+     */
+    public BagSession copyTo(Path newBagDir) {
+        Bag copy = new Bag(bag.getVersion());
+        copy.setFileEncoding(bag.getFileEncoding());
+        copy.setRootDir(newBagDir);
+        copy.setItemsToFetch(new ArrayList<>(bag.getItemsToFetch()));
+        Metadata metadata = new Metadata();
+        for (SimpleImmutableEntry<String, String> entry : bag.getMetadata().getAll()) {
+            metadata.add(entry.getKey(), entry.getValue());
+        }
+        copy.setMetadata(metadata);
+        copy.setPayLoadManifests(copyManifests(bag.getPayLoadManifests(), newBagDir));
+        copy.setTagManifests(copyManifests(bag.getTagManifests(), newBagDir));
+        BagSession session = new BagSession(newBagDir, copy, (Document) filesXml.cloneNode(true), datasetIdentifiers);
+        session.bagInfoModified = bagInfoModified;
+        session.payloadStaging = payloadStaging;
+        return session;
+    }
+
+    private Set<Manifest> copyManifests(Set<Manifest> manifests, Path newBagDir) {
+        Set<Manifest> copies = new HashSet<>();
+        for (Manifest manifest : manifests) {
+            Map<Path, String> checksums = new HashMap<>();
+            for (Map.Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()) {
+                checksums.put(newBagDir.resolve(bagDir.relativize(entry.getKey())), entry.getValue());
+            }
+            Manifest copy = new Manifest(manifest.getAlgorithm());
+            copy.setFileToChecksumMap(checksums);
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * @param algorithms manifest algorithms that the bag must have
+     * @return those for which the bag has no payload manifest yet
+     */
+    public Set<SupportedAlgorithm> missingManifests(Collection<SupportedAlgorithm> algorithms) {
+        Set<SupportedAlgorithm> present = bag.getPayLoadManifests().stream().map(Manifest::getAlgorithm).collect(Collectors.toSet());
+        return algorithms.stream().filter(algorithm -> !present.contains(algorithm)).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Adds payload and tag manifests for other algorithms. The tag manifests are calculated by {@link #write()}.
+     *
+     * @param algorithms the algorithms to add, see {@link #missingManifests(Collection)}
+     * @param checksums  the checksums of the payload files, see {@link StorageIo#copyHashingPayload}; only files that are in the existing payload manifests
+     *                   are added
+     */
+    public void addManifests(Collection<SupportedAlgorithm> algorithms, Map<Path, Map<SupportedAlgorithm, String>> checksums) {
+        Set<Path> payload = bag.getPayLoadManifests().stream().findFirst()
+            .map(manifest -> manifest.getFileToChecksumMap().keySet())
+            .orElse(checksums.keySet());
+        for (SupportedAlgorithm algorithm : algorithms) {
+            Map<Path, String> fileToChecksum = new HashMap<>();
+            for (Path file : payload) {
+                String checksum = checksums.getOrDefault(file, Collections.emptyMap()).get(algorithm);
+                if (checksum == null) {
+                    throw new IllegalStateException(format("No {0} checksum calculated for {1}", algorithm.getBagitName(), file));
+                }
+                fileToChecksum.put(file, checksum);
+            }
+            Manifest payloadManifest = new Manifest(algorithm);
+            payloadManifest.setFileToChecksumMap(fileToChecksum);
+            bag.getPayLoadManifests().add(payloadManifest);
+            bag.getTagManifests().add(new Manifest(algorithm));
+        }
+    }
+
+    /**
+     * Removes files from the payload manifests. The files themselves are not touched.
+     *
+     * @param files paths relative to the bag directory, as in files.xml
+     */
+    public void removePayloadFiles(Collection<Path> files) {
+        Set<Path> toRemove = files.stream().map(bagDir::resolve).collect(Collectors.toSet());
+        for (Manifest manifest : bag.getPayLoadManifests()) {
+            manifest.getFileToChecksumMap().keySet().removeAll(toRemove);
+        }
+    }
+
+    /**
+     * Copies a file into the payload of the bag and adds it to the payload manifests, with checksums calculated during the copy. With
+     * {@link PayloadStaging#LINK}, the file is read for its checksums and linked instead.
+     *
+     * @param source      the file to add
+     * @param destination path relative to the bag directory
+     * @param from        where the source is stored
+     */
+    public void addPayloadFile(Path source, Path destination, StorageRoot from) throws IOException, NoSuchAlgorithmException {
+        addPayloadFile(source, null, destination, from, null);
+    }
+
+    /**
+     * Like {@link #addPayloadFile(Path, Path, StorageRoot)}, but reads a local copy of the source, see {@link Prefetcher}, and hard-links the file from a
+     * store instead of copying it. A symbolic link still points to the source, as the copy may be evicted.
+     *
+     * @param cached a copy of the source on local disk, or null
+     * @param store  the store of files added before, or null to copy the file; not used with {@link PayloadStaging#LINK}
+     */
+    public void addPayloadFile(Path source, Path cached, Path destination, StorageRoot from, SpringfieldStore store)
+        throws IOException, NoSuchAlgorithmException {
+        Path target = bagDir.resolve(destination);
+        if (store != null && payloadStaging == PayloadStaging.COPY) {
+            Map<SupportedAlgorithm, String> checksums = store.add(source, cached, target,
+                bag.getPayLoadManifests().stream().map(Manifest::getAlgorithm).collect(Collectors.toList()));
+            for (Manifest manifest : bag.getPayLoadManifests()) {
+                manifest.getFileToChecksumMap().put(target, checksums.get(manifest.getAlgorithm()));
+            }
+            return;
+        }
+        Path readFrom = cached == null ? source : cached;
+        StorageRoot readRoot = cached == null ? from : StorageRoot.STAGING;
+        List<Manifest> manifests = new ArrayList<>(bag.getPayLoadManifests());
+        List<MessageDigest> digests = new ArrayList<>();
+        for (Manifest manifest : manifests) {
+            digests.add(Digests.create(manifest.getAlgorithm()));
+        }
+        if (payloadStaging == PayloadStaging.LINK) {
+            StorageIo.digest(readFrom, readRoot, digests);
+            StorageIo.linkFile(source, target, StorageRoot.STAGING);
+        }
+        else {
+            StorageIo.copyFile(readFrom, target, readRoot, StorageRoot.STAGING, digests);
+        }
+        for (int i = 0; i < manifests.size(); i++) {
+            manifests.get(i).getFileToChecksumMap().put(target, Digests.hex(digests.get(i).digest()));
+        }
+    }
+
+    /**
+     * Writes files.xml, bag-info.txt if modified, and the manifests to the bag directory. With {@link Durability#STRICT}, they are synced to disk.
+     */
+    public void write() throws IOException, TransformerException, NoSuchAlgorithmException {
+        XmlUtil.writeFilesXml(bagDir, filesXml);
+        if (bagInfoModified) {
+            MetadataWriter.writeBagMetadata(bag.getMetadata(), bag.getVersion(), bagDir, StandardCharsets.UTF_8);
+        }
+        ManifestManager.writeManifests(bag);
+        if (Fsync.getDurability() == Durability.STRICT) {
+            Fsync.syncWritten(bagDir.resolve("metadata/files.xml"));
+            // bag-info.txt and the manifests
+            try (Stream<Path> files = Files.list(bagDir)) {
+                for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                    Fsync.syncWritten(file);
+                }
+            }
+        }
+    }
+}
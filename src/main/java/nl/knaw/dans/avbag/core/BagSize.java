@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.Value;
+
+/**
+ * The bytes to read for the conversion of a bag or bag parent, per storage root. Measured before a run by {@link AVConverter}, for progress and
+ * scheduling.
+ */
+@Value
+public class BagSize {
+    public static final BagSize UNKNOWN = new BagSize(0L, 0L);
+
+    long inputBytes;
+    long springfieldBytes;
+
+    public long getTotal() {
+        return inputBytes + springfieldBytes;
+    }
+
+    /**
+     * @return the storage root most of the bytes are read from
+     */
+    public StorageRoot getMainRoot() {
+        return springfieldBytes > inputBytes ? StorageRoot.SPRINGFIELD : StorageRoot.INPUT;
+    }
+
+    public BagSize plus(BagSize other) {
+        return new BagSize(inputBytes + other.inputBytes, springfieldBytes + other.springfieldBytes);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.bagit.domain.Bag;
+import nl.knaw.dans.bagit.domain.Manifest;
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Moves a bag parent from the staging directory to the output directory.
+ * <p>
+ * On the same file system this is an atomic rename. Across file systems, the files are copied in parallel into a temporary sibling of the destination.
+ * While copying, the checksums of each file are calculated and compared with the manifests of the bag, as they are held by its {@link BagSession}, so the
+ * bag is not read again. Only when all files are verified, the temporary
+ * directory is renamed to the destination and the source is deleted. So the destination either does not exist or contains a complete and verified bag.
+ * <p>
+ * Unless the {@link Durability} is NONE, the bag parent is synced to disk before it is renamed, and the output directory after.
+ */
+@Slf4j
+public class BagTransfer {
+    private final int threads;
+    private final AtomicInteger queuedFiles = new AtomicInteger();
+
+    public BagTransfer(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required for the transfer of bags");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Registers the number of files waiting for or being copied as avbag.transfer.queued_files.
+     */
+    public void registerMetrics(MetricRegistry registry) {
+        registry.register("avbag.transfer.queued_files", (Gauge<Integer>) queuedFiles::get);
+    }
+
+    /**
+     * @param bag         a written bag, of which the bag parent in the staging directory is moved
+     * @param destination the bag parent in the output directory
+     */
+    public void move(BagSession bag, Path destination) throws IOException {
+        Path source = bag.getBagDir().getParent();
+        if (Files.exists(destination)) {
+            throw new FileAlreadyExistsException(destination.toString());
+        }
+        try {
+            Fsync.syncTree(source, threads);
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+            Fsync.syncDirectory(destination.getParent());
+            return;
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            log.info("{} is on another file system than {}, copying and verifying", source, destination.getParent());
+        }
+        moveByCopy(bag, destination);
+    }
+
+    /**
+     * Moves a bag parent whose payload files are symbolic links, see {@link PayloadStaging#LINK}. The links can not be renamed into the output directory,
+     * as the files they point to are deleted with the input. So the bag is assembled in a temporary sibling of the destination, as when copying across
+     * file systems: the payload files are hard-linked if they are on the same file system as the output directory and copied and verified otherwise.
+     */
+    public void assemble(BagSession bag, Path destination) throws IOException {
+        if (Files.exists(destination)) {
+            throw new FileAlreadyExistsException(destination.toString());
+        }
+        moveByCopy(bag, destination);
+    }
+
+    void moveByCopy(BagSession bag, Path destination) throws IOException {
+        Path source = bag.getBagDir().getParent();
+        Path temporary = destination.resolveSibling("." + destination.getFileName() + ".partial-" + UUID.randomUUID());
+        try {
+            long bytes = copyVerified(source, temporary, expectedChecksums(bag));
+            Fsync.syncTree(temporary, threads);
+            Files.move(temporary, destination, StandardCopyOption.ATOMIC_MOVE);
+            Fsync.syncDirectory(destination.getParent());
+            log.info("{} copied and verified, {} bytes", destination.getFileName(), bytes);
+        }
+        catch (IOException | RuntimeException e) {
+            StorageIo.deleteDirectory(temporary, StorageRoot.OUTPUT);
+            throw e;
+        }
+        try {
+            StorageIo.deleteDirectory(source, StorageRoot.STAGING);
+        }
+        catch (IOException e) {
+            // the bag is complete in the output directory, failing it now would leave it there
+            log.warn("{} is in the output directory, but could not be removed from the staging directory", source, e);
+        }
+    }
+
+    private long copyVerified(Path source, Path target, Map<Path, Map<SupportedAlgorithm, String>> expectedChecksums) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+        try {
+            List<Future<Long>> copies = new ArrayList<>();
+            for (Path file : files) {
+                queuedFiles.incrementAndGet();
+                copies.add(executor.submit(BagReport.propagate(() -> {
+                    try {
+                        return copyVerifiedFile(file, target.resolve(source.relativize(file)), expectedChecksums.get(file));
+                    }
+                    finally {
+                        queuedFiles.decrementAndGet();
+                    }
+                })));
+            }
+            long bytes = 0;
+            for (Future<Long> copy : copies) {
+                bytes += copy.get();
+            }
+            return bytes;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while copying " + source, e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not copy " + source, e.getCause());
+        }
+        finally {
+            // cancelled tasks never decrement
+            executor.shutdownNow().forEach(task -> queuedFiles.decrementAndGet());
+        }
+    }
+
+    private static long copyVerifiedFile(Path source, Path target, Map<SupportedAlgorithm, String> expected) throws IOException, NoSuchAlgorithmException {
+        if (Files.isSymbolicLink(source) && hardLink(source.toRealPath(), target)) {
+            // the same file as the one the checksums were calculated from, reading it again would prove nothing
+            return Files.size(target);
+        }
+        if (expected == null) {
+            // tag manifests are not in any manifest themselves
+            StorageIo.copyFile(source, target, StorageRoot.STAGING, StorageRoot.OUTPUT);
+            if (Files.size(source) != Files.size(target)) {
+                throw new IOException(format("Size of {0} differs from {1} after copying", target, source));
+            }
+            return Files.size(target);
+        }
+        Map<SupportedAlgorithm, MessageDigest> digests = new HashMap<>();
+        for (SupportedAlgorithm algorithm : expected.keySet()) {
+            digests.put(algorithm, Digests.create(algorithm));
+        }
+        StorageIo.copyFile(source, target, StorageRoot.STAGING, StorageRoot.OUTPUT, digests.values());
+        for (Map.Entry<SupportedAlgorithm, MessageDigest> entry : digests.entrySet()) {
+            String actual = Digests.hex(entry.getValue().digest());
+            String expectedChecksum = expected.get(entry.getKey());
+            if (!actual.equalsIgnoreCase(expectedChecksum)) {
+                throw new IOException(format("{0} checksum of {1} is {2} after copying, but {3} according to the manifest",
+                    entry.getKey().getBagitName(), target, actual, expectedChecksum));
+            }
+        }
+        log.debug("Copied and verified {}", target);
+        return Files.size(target);
+    }
+
+    private static boolean hardLink(Path existing, Path link) {
+        try {
+            Throttling.of(StorageRoot.OUTPUT).acquireOperation();
+            Files.createLink(link, existing);
+            log.debug("Linked {}", link);
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            // typically another file system
+            log.debug("Could not link {} to {}, copying: {}", link, existing, e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * @return the expected checksums per file, for all files in the payload and tag manifests of the bag
+     */
+    private static Map<Path, Map<SupportedAlgorithm, String>> expectedChecksums(BagSession session) {
+        Map<Path, Map<SupportedAlgorithm, String>> checksums = new HashMap<>();
+        Bag bag = session.getBag();
+        List<Manifest> manifests = new ArrayList<>(bag.getPayLoadManifests());
+        manifests.addAll(bag.getTagManifests());
+        for (Manifest manifest : manifests) {
+            for (Map.Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()) {
+                Path file = session.getBagDir().resolve(bag.getRootDir().relativize(entry.getKey()));
+                checksums.computeIfAbsent(file, k -> new HashMap<>()).put(manifest.getAlgorithm(), entry.getValue());
+            }
+        }
+        return checksums;
+    }
+}
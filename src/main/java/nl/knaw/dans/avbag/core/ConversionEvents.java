@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+/**
+ * Java Flight Recorder events of a conversion, in the category "DANS / AV bag". They carry the bag parent being converted, so that a slow bag can be
+ * broken down into XML parsing, hashing, copying and waiting for the storage, next to the JDK's own file I/O events. When no recording is running, an
+ * event costs a check of a flag.
+ */
+public final class ConversionEvents {
+
+    private ConversionEvents() {
+    }
+
+    /**
+     * Starts a recording with the default settings of the JVM, which have an overhead of about 1%, and all the events in this class.
+     *
+     * @param destination the file to write the recording to when it is stopped
+     * @return the running recording
+     */
+    public static Recording startRecording(Path destination) throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        for (Class<? extends Event> event : new Class[] { BagEvent.class, StageEvent.class, FileEvent.class, ManifestEvent.class, XmlEvent.class }) {
+            recording.enable(event).withoutStackTrace();
+        }
+        recording.setDestination(destination);
+        recording.setName("easy-preprocess-av-bag");
+        recording.start();
+        return recording;
+    }
+
+    @Name("nl.knaw.dans.avbag.Bag")
+    @Label("Bag")
+    @Category({ "DANS", "AV bag" })
+    @StackTrace(false)
+    static class BagEvent extends Event {
+        @Label("Bag parent")
+        String bag;
+
+        @Label("Bag directory")
+        String bagDir;
+
+        @Label("Created bags")
+        int createdBags;
+    }
+
+    @Name("nl.knaw.dans.avbag.Stage")
+    @Label("Stage")
+    @Category({ "DANS", "AV bag" })
+    @StackTrace(false)
+    static class StageEvent extends Event {
+        @Label("Bag parent")
+        String bag;
+
+        @Label("Stage")
+        String stage;
+    }
+
+    @Name("nl.knaw.dans.avbag.File")
+    @Label("Payload file")
+    @Category({ "DANS", "AV bag" })
+    @StackTrace(false)
+    static class FileEvent extends Event {
+        @Label("Bag parent")
+        String bag;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Path")
+        String path;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("nl.knaw.dans.avbag.Manifests")
+    @Label("Manifests")
+    @Category({ "DANS", "AV bag" })
+    @StackTrace(false)
+    static class ManifestEvent extends Event {
+        @Label("Bag parent")
+        String bag;
+
+        @Label("Bag directory")
+        String bagDir;
+    }
+
+    @Name("nl.knaw.dans.avbag.Xml")
+    @Label("XML")
+    @Category({ "DANS", "AV bag" })
+    @StackTrace(false)
+    static class XmlEvent extends Event {
+        @Label("Bag parent")
+        String bag;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Path")
+        String path;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.Value;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The DOI and URN of a dataset, as found in the &lt;dct:identifier&gt; elements of &lt;ddm:dcmiMetadata&gt; in dataset.xml.
+ * <p>
+ * The document is streamed rather than parsed into a DOM, and reading stops as soon as both identifiers are found, usually well before the long relation
+ * and coverage lists some datasets have. When a type occurs more than once, the first one wins.
+ */
+@Value
+public class DatasetIdentifiers {
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    /**
+     * The DOI, or null if there is none.
+     */
+    String doi;
+
+    /**
+     * The URN, or null if there is none.
+     */
+    String urn;
+
+    public static DatasetIdentifiers read(Path datasetXml) throws IOException, XMLStreamException {
+        String doi = null;
+        String urn = null;
+        try (InputStream in = Files.newInputStream(datasetXml)) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                int dcmiMetadataDepth = 0;
+                while (reader.hasNext() && (doi == null || urn == null)) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        if (isElement(reader, "ddm", "dcmiMetadata") || dcmiMetadataDepth > 0) {
+                            dcmiMetadataDepth++;
+                        }
+                        if (dcmiMetadataDepth > 0 && isElement(reader, "dct", "identifier")) {
+                            String idType = getIdType(reader);
+                            // getElementText moves to the end element, so adjust the depth here
+                            String value = reader.getElementText();
+                            dcmiMetadataDepth--;
+                            if ("DOI".equals(idType) && doi == null) {
+                                doi = value;
+                            }
+                            else if ("URN".equals(idType) && urn == null) {
+                                urn = value;
+                            }
+                        }
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT && dcmiMetadataDepth > 0) {
+                        dcmiMetadataDepth--;
+                        if (dcmiMetadataDepth == 0) {
+                            // only the first <ddm:dcmiMetadata> counts
+                            break;
+                        }
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        return new DatasetIdentifiers(doi, urn);
+    }
+
+    private static boolean isElement(XMLStreamReader reader, String prefix, String localName) {
+        return prefix.equals(reader.getPrefix()) && localName.equals(reader.getLocalName());
+    }
+
+    private static String getIdType(XMLStreamReader reader) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if ("xsi".equals(reader.getAttributePrefix(i)) && "type".equals(reader.getAttributeLocalName(i))) {
+                return reader.getAttributeValue(i).replace("id-type:", "");
+            }
+        }
+        return "";
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+}
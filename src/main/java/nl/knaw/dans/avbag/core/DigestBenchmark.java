@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.Value;
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Measures the throughput of the message digest implementations of the installed security providers on this host. The data is hashed in chunks of the
+ * size used for copying, after a warm-up that gives the JIT the chance to replace the digest by its intrinsic, if the CPU has one.
+ */
+public final class DigestBenchmark {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    @Value
+    public static class Result {
+        SupportedAlgorithm algorithm;
+        Provider provider;
+        double megabytesPerSecond;
+
+        @Override
+        public String toString() {
+            return format("{0} {1} {2,number,0.0} MB/s", algorithm.getBagitName(), provider.getName(), megabytesPerSecond);
+        }
+    }
+
+    private DigestBenchmark() {
+    }
+
+    /**
+     * @param algorithm the algorithm
+     * @param megabytes the amount of data to hash per provider, after the warm-up
+     * @return one result per provider that implements the algorithm, the fastest first
+     */
+    public static List<Result> run(SupportedAlgorithm algorithm, int megabytes) throws NoSuchAlgorithmException {
+        Provider[] providers = Security.getProviders("MessageDigest." + algorithm.getMessageDigestName());
+        if (providers == null) {
+            throw new NoSuchAlgorithmException(algorithm.getMessageDigestName());
+        }
+        byte[] chunk = new byte[CHUNK_SIZE];
+        new Random(0).nextBytes(chunk);
+        List<Result> results = new ArrayList<>();
+        for (Provider provider : providers) {
+            MessageDigest digest = MessageDigest.getInstance(algorithm.getMessageDigestName(), provider);
+            hash(digest, chunk, Math.max(1, megabytes / 2));
+            long start = System.nanoTime();
+            hash(digest, chunk, megabytes);
+            double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+            results.add(new Result(algorithm, provider, megabytes / seconds));
+        }
+        results.sort(Comparator.comparingDouble(Result::getMegabytesPerSecond).reversed());
+        return results;
+    }
+
+    /**
+     * @return the provider of the fastest implementation of the algorithm
+     */
+    public static Provider fastest(SupportedAlgorithm algorithm, int megabytes) throws NoSuchAlgorithmException {
+        return run(algorithm, megabytes).get(0).getProvider();
+    }
+
+    private static void hash(MessageDigest digest, byte[] chunk, int chunks) {
+        for (int i = 0; i < chunks; i++) {
+            digest.update(chunk);
+        }
+        digest.digest();
+    }
+}
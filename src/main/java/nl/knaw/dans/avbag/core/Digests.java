@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.bagit.hash.StandardSupportedAlgorithms;
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Helpers for calculating checksums outside of bagit-lib, in the same format as bagit-lib writes them to manifests.
+ * <p>
+ * All message digests of the converter, for payload and tag manifests alike, are created by {@link #create(SupportedAlgorithm)}, so the security provider
+ * can be chosen per algorithm with {@link #configure(Map)}. Like the {@link Throttling}, the choice is process wide.
+ */
+@Slf4j
+public final class Digests {
+    /**
+     * The value for the provider of an algorithm that selects the fastest one on this host, see {@link DigestBenchmark}.
+     */
+    public static final String AUTO = "auto";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int AUTO_BENCHMARK_MEGABYTES = 256;
+    private static final Map<SupportedAlgorithm, Provider> providers = new ConcurrentHashMap<>();
+
+    private Digests() {
+    }
+
+    /**
+     * @param name the name of an algorithm as in the names of manifests, for example sha256
+     * @return the algorithm
+     */
+    public static SupportedAlgorithm algorithm(String name) {
+        for (StandardSupportedAlgorithms algorithm : StandardSupportedAlgorithms.values()) {
+            if (algorithm.getBagitName().equalsIgnoreCase(name.trim())) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException(format("Unsupported manifest algorithm {0}, expected one of {1}", name,
+            Arrays.stream(StandardSupportedAlgorithms.values()).map(StandardSupportedAlgorithms::getBagitName).collect(Collectors.joining(", "))));
+    }
+
+    /**
+     * @param names names as accepted by {@link #algorithm(String)}
+     * @return the algorithms, in the given order
+     */
+    public static Set<SupportedAlgorithm> algorithms(Collection<String> names) {
+        return names.stream().map(Digests::algorithm).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Selects the security provider per algorithm. Algorithms that are not configured use the default provider of the JVM.
+     *
+     * @param config per algorithm name, as accepted by {@link #algorithm(String)}, the name of an installed provider, for example SUN, the class name of a
+     *               provider to instantiate, or {@link #AUTO}
+     */
+    public static synchronized void configure(Map<String, String> config) throws NoSuchAlgorithmException {
+        providers.clear();
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            SupportedAlgorithm algorithm = algorithm(entry.getKey());
+            Provider provider = AUTO.equalsIgnoreCase(entry.getValue().trim())
+                ? DigestBenchmark.fastest(algorithm, AUTO_BENCHMARK_MEGABYTES)
+                : provider(entry.getValue().trim());
+            // fail at startup rather than at the first bag
+            MessageDigest.getInstance(algorithm.getMessageDigestName(), provider);
+            providers.put(algorithm, provider);
+            log.info("{} checksums calculated by provider {}", algorithm.getBagitName(), provider.getName());
+        }
+    }
+
+    private static Provider provider(String name) {
+        Provider provider = Security.getProvider(name);
+        if (provider != null) {
+            return provider;
+        }
+        try {
+            return (Provider) Class.forName(name).getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException(format("Unknown security provider {0}, expected an installed provider, a provider class or {1}", name, AUTO), e);
+        }
+    }
+
+    public static MessageDigest create(SupportedAlgorithm algorithm) throws NoSuchAlgorithmException {
+        Provider provider = providers.get(algorithm);
+        return provider == null
+            ? MessageDigest.getInstance(algorithm.getMessageDigestName())
+            : MessageDigest.getInstance(algorithm.getMessageDigestName(), provider);
+    }
+
+    public static String hex(byte[] digest) {
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
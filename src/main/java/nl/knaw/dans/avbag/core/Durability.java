@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+/**
+ * When the converter forces written data to disk, see {@link Fsync}.
+ */
+public enum Durability {
+    /**
+     * Never; after a power loss the output directory may contain bags with truncated or empty files, while their input is deleted.
+     */
+    NONE,
+    /**
+     * All files and directories of a bag parent are synced in parallel right before it is renamed into the output directory, and the output directory
+     * right after. A bag parent is therefore durable before its input is deleted.
+     */
+    PER_BAG,
+    /**
+     * As {@link #PER_BAG}, and in addition every file is synced as soon as it is written in the staging directory.
+     */
+    STRICT
+}
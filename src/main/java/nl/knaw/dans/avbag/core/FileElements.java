@@ -15,7 +15,6 @@
  */
 package nl.knaw.dans.avbag.core;
 
-import lombok.AllArgsConstructor;
 import lombok.NonNull;
 import lombok.Value;
 import org.apache.commons.lang3.StringUtils;
@@ -23,43 +22,151 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-@AllArgsConstructor
+import static java.text.MessageFormat.format;
+
+/**
+ * The &lt;file&gt; elements of a files.xml, indexed by easy-file ID and by filepath.
+ */
 public class FileElements {
+    public enum Rights {
+        ANONYMOUS,
+        KNOWN,
+        RESTRICTED_REQUEST,
+        RESTRICTED_GROUP,
+        NONE;
+
+        static Rights parse(String tag, String value) {
+            try {
+                return valueOf(StringUtils.trim(value));
+            }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(format("Unknown {0} on file element: {1}", tag, value), e);
+            }
+        }
+    }
+
     @Value
     static class FileElement {
         String fileId;
         String filePath;
-        String accessibleToRights;
-        String visibleToRights;
+        Rights accessibleToRights;
+        Rights visibleToRights;
+        boolean placeHolder;
+        boolean springfieldBacked;
+
+        public boolean isNoneNone() {
+            return accessibleToRights == Rights.NONE && visibleToRights == Rights.NONE;
+        }
+    }
+
+    private final List<FileElement> fileElements;
+    private final Map<String, FileElement> byFileId = new HashMap<>();
+    private final Map<Path, FileElement> byFilePath = new HashMap<>();
+    private final boolean allNoneNone;
+
+    private FileElements(List<FileElement> fileElements) {
+        this.fileElements = Collections.unmodifiableList(fileElements);
+        boolean noneNone = true;
+        for (FileElement fileElement : fileElements) {
+            byFileId.put(fileElement.getFileId(), fileElement);
+            byFilePath.put(normalize(fileElement.getFilePath()), fileElement);
+            noneNone &= fileElement.isNoneNone();
+        }
+        this.allNoneNone = noneNone;
     }
 
     static List<FileElement> read(Document filesXml) {
+        return read(filesXml, true, Collections.emptySet(), Collections.emptySet());
+    }
+
+    /**
+     * @param filesXml             the files.xml to index
+     * @param placeHolderPaths     the filepaths of the place holders, see {@link PlaceHolders#getFilePaths()}
+     * @param springfieldIds       the easy-file IDs of the files that have a springfield counterpart
+     * @param missingRightsAreNone whether a missing accessibleToRights or visibleToRights counts as NONE, as it always has when pruning, rather than being
+     *                             rejected, as it is by {@link #read(Document)}
+     * @return the indexed file elements
+     */
+    static FileElements index(Document filesXml, Collection<Path> placeHolderPaths, Collection<String> springfieldIds, boolean missingRightsAreNone) {
+        Set<Path> normalizedPaths = new HashSet<>();
+        for (Path path : placeHolderPaths) {
+            normalizedPaths.add(path.normalize());
+        }
+        return new FileElements(read(filesXml, !missingRightsAreNone, normalizedPaths, new HashSet<>(springfieldIds)));
+    }
+
+    private static List<FileElement> read(Document filesXml, boolean strict, Set<Path> placeHolderPaths, Set<String> springfieldIds) {
         NodeList fileElements = filesXml.getElementsByTagName("file");
         List<FileElement> fileElementList = new ArrayList<>();
         for (int i = 0; i < fileElements.getLength(); i++) {
             Element fileElement = (Element) fileElements.item(i);
-            fileElementList.add(getFileElement(fileElement));
+            fileElementList.add(getFileElement(fileElement, strict, placeHolderPaths, springfieldIds));
         }
         return fileElementList;
     }
 
-    private static FileElement getFileElement(@NonNull Element fileElement) {
-        if (fileElement.getElementsByTagName("accessibleToRights").getLength() == 0) {
-            throw new IllegalArgumentException("accessibleToRights is required on every file element");
-        }
-        if (fileElement.getElementsByTagName("visibleToRights").getLength() == 0) {
-            throw new IllegalArgumentException("visibleToRights is required on every file element");
-        }
-        Element accessibleToRights = (Element) fileElement.getElementsByTagName("accessibleToRights").item(0);
-        Element visibleToRights = (Element) fileElement.getElementsByTagName("visibleToRights").item(0);
+    private static FileElement getFileElement(@NonNull Element fileElement, boolean strict, Set<Path> placeHolderPaths, Set<String> springfieldIds) {
+        String fileId = fileElement.getElementsByTagName("dct:identifier").item(0).getTextContent();
+        String filePath = fileElement.getAttribute("filepath");
         return new FileElement(
-            fileElement.getElementsByTagName("dct:identifier").item(0).getTextContent(),
-            fileElement.getAttribute("filepath"),
-            StringUtils.trim(accessibleToRights.getTextContent()),
-            StringUtils.trim(visibleToRights.getTextContent())
+            fileId,
+            filePath,
+            getRights(fileElement, "accessibleToRights", strict),
+            getRights(fileElement, "visibleToRights", strict),
+            placeHolderPaths.contains(normalize(filePath)),
+            springfieldIds.contains(fileId)
         );
     }
+
+    private static Rights getRights(Element fileElement, String tag, boolean strict) {
+        NodeList elements = fileElement.getElementsByTagName(tag);
+        if (elements.getLength() == 0) {
+            if (strict) {
+                throw new IllegalArgumentException(tag + " is required on every file element");
+            }
+            return Rights.NONE;
+        }
+        return Rights.parse(tag, elements.item(0).getTextContent());
+    }
+
+    static Path normalize(String filePath) {
+        return Paths.get(filePath).normalize();
+    }
+
+    public List<FileElement> getAll() {
+        return fileElements;
+    }
+
+    public boolean isEmpty() {
+        return fileElements.isEmpty();
+    }
+
+    /**
+     * @return the file element, or null if there is none with this easy-file ID
+     */
+    public FileElement getByFileId(String fileId) {
+        return byFileId.get(fileId);
+    }
+
+    /**
+     * @return the file element, or null if there is none with this filepath
+     */
+    public FileElement getByFilePath(String filePath) {
+        return byFilePath.get(normalize(filePath));
+    }
+
+    public boolean isAllNoneNone() {
+        return allNoneNone;
+    }
 }
@@ -15,54 +15,39 @@
  */
 package nl.knaw.dans.avbag.core;
 
-import nl.knaw.dans.bagit.domain.Bag;
-import nl.knaw.dans.bagit.exceptions.InvalidBagitFileFormatException;
-import nl.knaw.dans.bagit.exceptions.MaliciousPathException;
-import nl.knaw.dans.bagit.exceptions.UnparsableVersionException;
-import nl.knaw.dans.bagit.exceptions.UnsupportedAlgorithmException;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 import static java.lang.String.format;
-import static nl.knaw.dans.avbag.core.BagInfoManager.getBag;
-import static nl.knaw.dans.avbag.core.ManifestManager.removePayloadFilesFromManifests;
-import static nl.knaw.dans.avbag.core.ManifestManager.updateManifests;
 
 public class FileRemover {
 
-    private final Path bagDir;
-    private final Document filesXml;
+    private final BagSession session;
 
-    public FileRemover(Path bagDir) {
-        this.bagDir = bagDir;
-        try {
-            this.filesXml = XmlUtil.readXml(bagDir.resolve("metadata/files.xml"));
-        }
-        catch (IOException | ParserConfigurationException | SAXException e) {
-            throw new RuntimeException(e);
-        }
+    public FileRemover(BagSession session) {
+        this.session = session;
     }
 
-    public List<Path> removeFiles(Predicate<Element> removeWhen)
-        throws IOException, TransformerException, MaliciousPathException, UnparsableVersionException, UnsupportedAlgorithmException, InvalidBagitFileFormatException, ParserConfigurationException,
-        SAXException, NoSuchAlgorithmException {
-
+    /**
+     * Deletes the matching files from the bag directory and removes them from files.xml and the payload manifests of the session. Nothing else is written,
+     * see {@link BagSession#write()}.
+     *
+     * @param removeWhen selects the &lt;file&gt; elements to remove
+     * @return the removed files, relative to the bag directory
+     */
+    public List<Path> removeFiles(Predicate<Element> removeWhen) throws IOException {
+        Path bagDir = session.getBagDir();
         List<Path> removedFiles = new ArrayList<>();
-        NodeList fileList = filesXml.getElementsByTagName("file");
+        NodeList fileList = session.getFilesXml().getElementsByTagName("file");
         for (int i = 0; i < fileList.getLength(); i++) {
             Element fileElement = (Element) fileList.item(i);
             if (removeWhen.test(fileElement)) {
@@ -70,25 +55,32 @@ public class FileRemover {
                 removedFiles.add(Paths.get(filepath));
                 fileElement.getParentNode().removeChild(fileElement);
                 Path file = bagDir.resolve(filepath);
-                if (!file.toFile().delete()) {
+                ConversionEvents.FileEvent event = new ConversionEvents.FileEvent();
+                event.begin();
+                long bytes = event.isEnabled() && Files.isRegularFile(file) ? Files.size(file) : 0L;
+                if (!StorageIo.delete(file, StorageRoot.STAGING)) {
                     throw new IOException(format("%s: Could not delete %s", bagDir.getParent().getFileName(), file));
                 }
+                if (event.shouldCommit()) {
+                    event.bag = BagReport.currentBagParent();
+                    event.operation = "remove";
+                    event.path = filepath;
+                    event.bytes = bytes;
+                    event.commit();
+                }
                 deleteIfEmpty(file.getParent());
                 // Since we're modifying the list we're iterating over, decrement i to adjust for the next iteration.
                 i--;
             }
         }
-        XmlUtil.writeFilesXml(bagDir, filesXml);
-        Bag bag = getBag(bagDir);
-        removePayloadFilesFromManifests(removedFiles, bag);
-        updateManifests(bag);
+        session.removePayloadFiles(removedFiles);
         return removedFiles;
     }
 
     private static void deleteIfEmpty(Path path) throws IOException {
         try (Stream<Path> list = Files.list(path)) {
             if (!list.iterator().hasNext()) {
-                Files.deleteIfExists(path);
+                StorageIo.delete(path, StorageRoot.STAGING);
                 deleteIfEmpty(path.getParent());
             }
         }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forces written data to disk according to the configured {@link Durability}. Like the {@link Throttling}, the durability is process wide. The time spent
+ * is recorded in the timers avbag.fsync.bag and avbag.fsync.file and in the {@link BagReport} of the current thread.
+ */
+@Slf4j
+public final class Fsync {
+    private static final Timer bagTimer = new Timer();
+    private static final Timer fileTimer = new Timer();
+    private static volatile Durability durability = Durability.NONE;
+
+    private Fsync() {
+    }
+
+    public static void configure(Durability durability) {
+        Fsync.durability = durability;
+        log.info("Durability {}", durability);
+    }
+
+    public static Durability getDurability() {
+        return durability;
+    }
+
+    public static void registerMetrics(MetricRegistry registry) {
+        registry.register("avbag.fsync.bag", bagTimer);
+        registry.register("avbag.fsync.file", fileTimer);
+    }
+
+    /**
+     * Syncs all files and directories under a directory, with the given number of threads, unless the durability is {@link Durability#NONE}. The
+     * directories are synced after the files in them.
+     */
+    public static void syncTree(Path root, int threads) throws IOException {
+        if (durability == Durability.NONE) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<Path> files = new ArrayList<>();
+        List<Path> directories = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                directories.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+        try {
+            forceAll(executor, files);
+            forceAll(executor, directories);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        record(bagTimer, start);
+        log.debug("Synced {} files and {} directories of {}", files.size(), directories.size(), root);
+    }
+
+    /**
+     * Syncs a directory after an entry was renamed into it, unless the durability is {@link Durability#NONE}.
+     */
+    public static void syncDirectory(Path dir) throws IOException {
+        if (durability == Durability.NONE) {
+            return;
+        }
+        long start = System.nanoTime();
+        force(dir);
+        record(bagTimer, start);
+    }
+
+    /**
+     * Syncs a file that was just written, if the durability is {@link Durability#STRICT}.
+     */
+    public static void syncWritten(Path file) throws IOException {
+        if (durability != Durability.STRICT) {
+            return;
+        }
+        long start = System.nanoTime();
+        force(file);
+        record(fileTimer, start);
+    }
+
+    private static void forceAll(ExecutorService executor, List<Path> paths) throws IOException {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (Path path : paths) {
+            futures.add(executor.submit(() -> {
+                force(path);
+                return null;
+            }));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while syncing", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not sync", e.getCause());
+        }
+    }
+
+    private static void force(Path path) throws IOException {
+        // reading is enough to sync a file or directory on Linux; copies keep the permissions of read-only input
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static void record(Timer timer, long start) {
+        long nanos = System.nanoTime() - start;
+        timer.update(nanos, TimeUnit.NANOSECONDS);
+        BagReport.countFsync(nanos);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+
+/**
+ * A lock file next to a bag parent in the inbox, claiming the bag parent for one conversion process.
+ * <p>
+ * The lock is created with {@link Files#createFile}, which is atomic on local file systems and on NFSv3 and later, so of several hosts sharing an inbox at most
+ * one acquires it. A lock left behind by a crashed process is not broken automatically, as that cannot be done safely without a coordinator. It is reported
+ * with its owner and age, and must be removed by an operator.
+ */
+@Slf4j
+public class InboxLock implements AutoCloseable {
+    private static final String SUFFIX = ".lock";
+
+    private final Path lockFile;
+
+    private InboxLock(Path lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    /**
+     * @param bagParentDir the directory of the bag parent in the inbox
+     * @return the lock, or empty if another process holds it
+     * @throws IOException if the lock file can not be created for another reason than that it already exists
+     */
+    public static Optional<InboxLock> tryAcquire(Path bagParentDir) throws IOException {
+        Path lockFile = bagParentDir.resolveSibling(bagParentDir.getFileName() + SUFFIX);
+        try {
+            Files.createFile(lockFile);
+        }
+        catch (FileAlreadyExistsException e) {
+            log.info("{} skipped, locked by {}", bagParentDir.getFileName(), describe(lockFile));
+            return Optional.empty();
+        }
+        String owner = ManagementFactory.getRuntimeMXBean().getName() + " "
+            + ZonedDateTime.now(ZoneId.systemDefault()).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        Files.write(lockFile, owner.getBytes(StandardCharsets.UTF_8));
+        return Optional.of(new InboxLock(lockFile));
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(lockFile);
+    }
+
+    private static String describe(Path lockFile) {
+        try {
+            String owner = new String(Files.readAllBytes(lockFile), StandardCharsets.UTF_8).trim();
+            Duration age = Duration.between(Files.getLastModifiedTime(lockFile).toInstant(), Instant.now());
+            return owner + " (age " + age + ")";
+        }
+        catch (IOException e) {
+            // the owner may just have released it
+            return "another process";
+        }
+    }
+}
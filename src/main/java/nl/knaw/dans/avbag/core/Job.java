@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * A conversion of the bag parents in an input directory, or of one of them, submitted to the server command. Persisted as JSON by the {@link JobQueue}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Job {
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    private String id;
+    private Path inputDir;
+    private Path outputDir;
+    // null for all bag parents in inputDir
+    private String bagParent;
+    private boolean keepInput;
+
+    private Status status = Status.QUEUED;
+    private Instant createdAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+
+    private long processedBags;
+    private long createdBags;
+    private long failedBags;
+    private long skippedBags;
+    private Path reportDir;
+    private String message;
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.dropwizard.jackson.Jackson;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.avbag.core.Job.Status;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The jobs of the server command, persisted as one JSON file per job in a directory, so that queued jobs survive a restart. A job that was running when
+ * the process stopped is not resumed, because its input may be partially converted; it is marked as failed, with its staging directory left for
+ * inspection.
+ * <p>
+ * Callers get copies of the jobs; changes are made with {@link #update(String, Consumer)}, which also persists them.
+ */
+@Slf4j
+public class JobQueue {
+    private static final String SUFFIX = ".json";
+
+    private final Path queueDir;
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    public JobQueue(Path queueDir) throws IOException {
+        this.queueDir = queueDir.toAbsolutePath();
+        Files.createDirectories(this.queueDir);
+        List<Job> persisted = new ArrayList<>();
+        try (Stream<Path> files = Files.list(this.queueDir)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).collect(Collectors.toList())) {
+                persisted.add(objectMapper.readValue(file.toFile(), Job.class));
+            }
+        }
+        persisted.sort(Comparator.comparing(Job::getCreatedAt));
+        for (Job job : persisted) {
+            jobs.put(job.getId(), job);
+            if (job.getStatus() == Status.RUNNING) {
+                log.warn("Job {} was interrupted by a restart", job.getId());
+                job.setStatus(Status.FAILED);
+                job.setFinishedAt(Instant.now());
+                job.setMessage("Interrupted by a restart, the input and staging directories may contain a partial conversion");
+                save(job);
+            }
+        }
+    }
+
+    public synchronized Job submit(Path inputDir, Path outputDir, String bagParent, boolean keepInput) throws IOException {
+        Job job = new Job();
+        job.setId(UUID.randomUUID().toString());
+        job.setInputDir(inputDir);
+        job.setOutputDir(outputDir);
+        job.setBagParent(bagParent);
+        job.setKeepInput(keepInput);
+        job.setCreatedAt(Instant.now());
+        job.setReportDir(queueDir.resolve(job.getId()));
+        save(job);
+        jobs.put(job.getId(), job);
+        return copy(job);
+    }
+
+    public synchronized Optional<Job> get(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(this::copy);
+    }
+
+    /**
+     * @return the jobs in the order of submission
+     */
+    public synchronized List<Job> list() {
+        return jobs.values().stream().map(this::copy).collect(Collectors.toList());
+    }
+
+    public synchronized long count(Status status) {
+        return jobs.values().stream().filter(job -> job.getStatus() == status).count();
+    }
+
+    /**
+     * Changes a job and persists it.
+     *
+     * @return the changed job
+     */
+    public synchronized Job update(String id, Consumer<Job> change) throws IOException {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw new IllegalArgumentException("No such job: " + id);
+        }
+        change.accept(job);
+        save(job);
+        return copy(job);
+    }
+
+    private void save(Job job) throws IOException {
+        // a crash must not leave a job file that cannot be read at the next start
+        Path file = queueDir.resolve(job.getId() + SUFFIX);
+        Path temporary = queueDir.resolve("." + job.getId() + SUFFIX + ".tmp");
+        objectMapper.writeValue(temporary.toFile(), job);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Job copy(Job job) {
+        return objectMapper.convertValue(job, Job.class);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.lifecycle.Managed;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.avbag.config.PrefetchConfig;
+import nl.knaw.dans.avbag.core.Job.Status;
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Runs the jobs of a {@link JobQueue} on a fixed number of workers, in the order of submission. Each job converts into a staging directory of its own,
+ * &lt;stagingDir&gt;/&lt;job id&gt;, and claims its bag parents with lock files, so that jobs with overlapping input never convert the same bag parent.
+ * The {@link PseudoFileSources} are loaded once and shared by all jobs. With a prefetch cache directory, each job prefetches the Springfield files of its own
+ * bag parents, see {@link Prefetcher}.
+ */
+@Slf4j
+public class JobRunner implements Managed {
+    private final JobQueue queue;
+    private final Path stagingDir;
+    private final PseudoFileSources pseudoFileSources;
+    private final int workers;
+    private final int transferThreads;
+    private final Map<String, AVConverter> running = new ConcurrentHashMap<>();
+    @Setter
+    @NonNull
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    @Setter
+    @NonNull
+    private PayloadStaging payloadStaging = PayloadStaging.COPY;
+    @Setter
+    private Trash trash;
+    @Setter
+    @NonNull
+    private Set<SupportedAlgorithm> extraManifestAlgorithms = Collections.emptySet();
+    @Setter
+    private boolean deduplicateSpringfieldFiles;
+    @Setter
+    private Duration progressInterval;
+    @Setter
+    @NonNull
+    private PrefetchConfig prefetchConfig = new PrefetchConfig();
+    private final Map<String, Prefetcher> prefetchers = new ConcurrentHashMap<>();
+    private MetricRegistry metricRegistry;
+    private ExecutorService executor;
+
+    public JobRunner(JobQueue queue, Path stagingDir, PseudoFileSources pseudoFileSources, int workers, int transferThreads) {
+        this.queue = queue;
+        this.stagingDir = stagingDir.toAbsolutePath();
+        this.pseudoFileSources = pseudoFileSources;
+        this.workers = workers;
+        this.transferThreads = transferThreads;
+    }
+
+    /**
+     * Registers the number of jobs per status as gauges avbag.jobs.&lt;status&gt; and the bytes in the prefetch caches of the running jobs as
+     * avbag.prefetch.cached_bytes. The stage timers and the byte and prefetch counters of the jobs add up in the same registry.
+     */
+    public void registerMetrics(MetricRegistry registry) {
+        for (Status status : Status.values()) {
+            registry.register("avbag.jobs." + status.name().toLowerCase(), (Gauge<Long>) () -> queue.count(status));
+        }
+        registry.register("avbag.prefetch.cached_bytes", (Gauge<Long>) () -> prefetchers.values().stream().mapToLong(Prefetcher::getUsedBytes).sum());
+        metricRegistry = registry;
+    }
+
+    @Override
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> new Thread(runnable, "job-worker-" + threadNumber.incrementAndGet()));
+        List<Job> queued = queue.list().stream().filter(job -> job.getStatus() == Status.QUEUED).collect(Collectors.toList());
+        if (!queued.isEmpty()) {
+            log.info("Resuming {} queued jobs", queued.size());
+        }
+        queued.forEach(job -> executor.execute(() -> run(job.getId())));
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        // running jobs are marked as failed at the next start, see JobQueue
+        executor.shutdownNow();
+        // the jobs may still be using the trash, which is closed after this
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            log.info("Waiting for {} running jobs to stop", running.size());
+        }
+    }
+
+    public Job submit(Path inputDir, Path outputDir, String bagParent, boolean keepInput) throws IOException {
+        Job job = queue.submit(inputDir.toAbsolutePath(), outputDir.toAbsolutePath(), bagParent, keepInput);
+        executor.execute(() -> run(job.getId()));
+        log.info("Job {} queued: {} -> {}", job.getId(), bagParent == null ? inputDir : inputDir.resolve(bagParent), outputDir);
+        return job;
+    }
+
+    /**
+     * @return the job, with the counts so far if it is running
+     */
+    public Optional<Job> get(String id) {
+        return queue.get(id).map(this::withProgress);
+    }
+
+    public List<Job> list() {
+        return queue.list().stream().map(this::withProgress).collect(Collectors.toList());
+    }
+
+    private Job withProgress(Job job) {
+        AVConverter converter = running.get(job.getId());
+        if (converter != null) {
+            copyCounts(converter, job);
+        }
+        return job;
+    }
+
+    private void run(String id) {
+        try {
+            Job job = queue.update(id, started -> {
+                started.setStatus(Status.RUNNING);
+                started.setStartedAt(Instant.now());
+            });
+            Path jobStagingDir = stagingDir.resolve(id);
+            Files.createDirectories(jobStagingDir);
+            AVConverter converter = new AVConverter(job.getInputDir(), job.getOutputDir(), jobStagingDir, pseudoFileSources, job.isKeepInput());
+            converter.setShard(Shard.ALL);
+            converter.setOnlyBagParent(job.getBagParent());
+            converter.setReportDir(job.getReportDir());
+            converter.setBagTransfer(new BagTransfer(transferThreads));
+            converter.setRetryPolicy(retryPolicy);
+            converter.setPayloadStaging(payloadStaging);
+            converter.setTrash(trash);
+            converter.setExtraManifestAlgorithms(extraManifestAlgorithms);
+            converter.setDeduplicateSpringfieldFiles(deduplicateSpringfieldFiles);
+            converter.setProgressInterval(progressInterval);
+            converter.setMetricRegistry(metricRegistry);
+            running.put(id, converter);
+            try {
+                try (Prefetcher prefetcher = createPrefetcher(id)) {
+                    converter.setPrefetcher(prefetcher);
+                    converter.convertAll();
+                }
+                finish(id, converter, converter.getFailedBags() == 0 ? null : format("{0} bag parents failed, see the report", converter.getFailedBags()));
+            }
+            catch (Exception e) {
+                log.error("Job {} failed", id, e);
+                finish(id, converter, e.toString());
+            }
+            finally {
+                running.remove(id);
+                prefetchers.remove(id);
+            }
+            deleteIfEmpty(jobStagingDir);
+        }
+        catch (IOException | RuntimeException e) {
+            log.error("Job {} could not be run", id, e);
+        }
+    }
+
+    /**
+     * @return the prefetcher of the job, or null if there is no prefetch cache directory
+     */
+    private Prefetcher createPrefetcher(String id) throws IOException {
+        if (prefetchConfig.getCacheDir() == null) {
+            return null;
+        }
+        Prefetcher prefetcher = new Prefetcher(prefetchConfig.getCacheDir(), prefetchConfig.getMaxSize().toBytes(), prefetchConfig.getLookahead(),
+            pseudoFileSources);
+        if (metricRegistry != null) {
+            prefetcher.countIn(metricRegistry);
+        }
+        prefetchers.put(id, prefetcher);
+        return prefetcher;
+    }
+
+    private void finish(String id, AVConverter converter, String failure) throws IOException {
+        queue.update(id, finished -> {
+            copyCounts(converter, finished);
+            finished.setStatus(failure == null ? Status.DONE : Status.FAILED);
+            finished.setMessage(failure);
+            finished.setFinishedAt(Instant.now());
+        });
+        log.info("Job {} finished: {}", id, failure == null ? "done" : failure);
+    }
+
+    private static void copyCounts(AVConverter converter, Job job) {
+        job.setProcessedBags(converter.getProcessed());
+        job.setCreatedBags(converter.getCreatedBags());
+        job.setFailedBags(converter.getFailedBags());
+        job.setSkippedBags(converter.getSkippedBags());
+    }
+
+    private static void deleteIfEmpty(Path dir) throws IOException {
+        try {
+            Files.deleteIfExists(dir);
+        }
+        catch (DirectoryNotEmptyException e) {
+            log.warn("{} is not empty, left for inspection", dir);
+        }
+    }
+}
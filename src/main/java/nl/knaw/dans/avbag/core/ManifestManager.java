@@ -15,8 +15,6 @@
  */
 package nl.knaw.dans.avbag.core;
 
-import lombok.extern.slf4j.Slf4j;
-import nl.knaw.dans.bagit.creator.CreatePayloadManifestsVistor;
 import nl.knaw.dans.bagit.creator.CreateTagManifestsVistor;
 import nl.knaw.dans.bagit.domain.Bag;
 import nl.knaw.dans.bagit.domain.Manifest;
@@ -31,16 +29,10 @@ import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
-import static java.time.LocalTime.now;
-import static nl.knaw.dans.bagit.hash.Hasher.createManifestToMessageDigestMap;
-import static org.apache.commons.lang3.ObjectUtils.isEmpty;
-
-@Slf4j
 public abstract class ManifestManager {
 
     private final Charset fileEncoding;
@@ -61,6 +53,8 @@ public abstract class ManifestManager {
 
         // TODO Do the datasets have other big files?
         //  Then override visitFile and reuse values for paths not in fileIdToBagLocationMap.values().
+        ConversionEvents.ManifestEvent event = new ConversionEvents.ManifestEvent();
+        event.begin();
         Set<Manifest> payLoadManifests = bag.getPayLoadManifests();
         modifyPayLoadManifests(payLoadManifests);
         ManifestWriter.writePayloadManifests(payLoadManifests, bagitDir, rootDir, fileEncoding);
@@ -71,6 +65,11 @@ public abstract class ManifestManager {
         Files.walkFileTree(rootDir, visitor);
         replaceManifests(tagManifests, tagFilesMap);
         ManifestWriter.writeTagManifests(tagManifests, bagitDir, rootDir, fileEncoding);
+        if (event.shouldCommit()) {
+            event.bag = BagReport.currentBagParent();
+            event.bagDir = rootDir.toString();
+            event.commit();
+        }
     }
 
     private CreateTagManifestsVistor getTagManifestsVistor(Map<Manifest, MessageDigest> tagFilesMap) {
@@ -96,7 +95,12 @@ public abstract class ManifestManager {
                     return FileVisitResult.CONTINUE;
                 }
                 else {
-                    return super.visitFile(path, attrs);
+                    // like the super class, but read through the throttle of the staging area
+                    StorageIo.digest(path, StorageRoot.STAGING, tagFilesMap.values());
+                    for (Map.Entry<Manifest, MessageDigest> entry : tagFilesMap.entrySet()) {
+                        entry.getKey().getFileToChecksumMap().put(path, Digests.hex(entry.getValue().digest()));
+                    }
+                    return FileVisitResult.CONTINUE;
                 }
             }
 
@@ -111,51 +115,28 @@ public abstract class ManifestManager {
     }
 
     private static Map<Manifest, MessageDigest> getManifestToDigestMap(Set<Manifest> manifests) throws NoSuchAlgorithmException {
-        List<nl.knaw.dans.bagit.hash.SupportedAlgorithm> algorithms = manifests.stream().map(Manifest::getAlgorithm).collect(Collectors.toList());
-        return createManifestToMessageDigestMap(algorithms);
+        // like bagit-lib's Hasher.createManifestToMessageDigestMap, but with the providers of Digests
+        Map<Manifest, MessageDigest> map = new HashMap<>();
+        for (Manifest manifest : manifests) {
+            map.put(new Manifest(manifest.getAlgorithm()), Digests.create(manifest.getAlgorithm()));
+        }
+        return map;
     }
 
-    public static void updateManifests(Bag bag)
-        throws IOException, NoSuchAlgorithmException {
-        new ManifestManager(bag) {
-
-            protected void modifyPayLoadManifests(Set<Manifest> payLoadManifests) throws NoSuchAlgorithmException, IOException {
-                Map<Manifest, MessageDigest> payloadFilesMap = getManifestToDigestMap(payLoadManifests);
-                long beforeWalk = now().toNanoOfDay();
-                Path dataDir = bag.getRootDir().resolve("data");
-                if (Files.exists(dataDir)) {
-                    Files.walkFileTree(dataDir, new CreatePayloadManifestsVistor(payloadFilesMap, true));
-                }
-                long afterWalk = now().toNanoOfDay();
-
-                // statistics: is it worth to calculate only the changed files?
-                String depositDir = bag.getRootDir().getParent().getFileName().toString();
-                List<String> versionOf = bag.getMetadata().get("Is-Version-Of");
-                if (!isEmpty(versionOf)) {
-                    depositDir = versionOf.get(0).replace("urn:uuid:", "");
-                }
-                long nanosecondsInADay = 24L * 60 * 60 * 1_000_000_000;
-                if (afterWalk < beforeWalk) {
-                    afterWalk += nanosecondsInADay;
-                }
-                log.info("{} Nanoseconds to calculate checksums: {}", depositDir, afterWalk - beforeWalk);
-                replaceManifests(payLoadManifests, payloadFilesMap);
-            }
-
-        }.updateTagAndPayloadManifests();
-    }
-
-    public static void removePayloadFilesFromManifests(List<Path> filesToRemove, Bag bag)
+    /**
+     * Writes the payload manifests as they are in memory and recalculates the tag manifests.
+     *
+     * @param bag a bag of which the payload manifests are up to date, see {@link BagSession}
+     */
+    public static void writeManifests(Bag bag)
         throws IOException, NoSuchAlgorithmException {
         new ManifestManager(bag) {
 
             @Override
             protected void modifyPayLoadManifests(Set<Manifest> payLoadManifests) {
-                payLoadManifests.forEach(manifest ->
-                    manifest.getFileToChecksumMap().keySet().removeIf(path -> filesToRemove.contains(bag.getRootDir().relativize(path))));
+                // already up to date
             }
 
         }.updateTagAndPayloadManifests();
     }
-
 }
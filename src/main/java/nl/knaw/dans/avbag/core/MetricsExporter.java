@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.avbag.config.MetricsConfig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Exposes a metric registry during a run: as JMX beans, as a file in the Prometheus text format that is replaced atomically every interval, and at
+ * http://&lt;host&gt;:&lt;port&gt;/metrics. Each is optional, see {@link MetricsConfig}.
+ */
+@Slf4j
+public class MetricsExporter implements AutoCloseable {
+    private final MetricRegistry registry;
+    private final Path prometheusFile;
+    private JmxReporter jmxReporter;
+    private ScheduledExecutorService scheduler;
+    private HttpServer httpServer;
+
+    public MetricsExporter(MetricsConfig config, MetricRegistry registry) throws IOException {
+        this.registry = registry;
+        this.prometheusFile = config.getPrometheusFile();
+        if (config.isJmx()) {
+            jmxReporter = JmxReporter.forRegistry(registry).inDomain("nl.knaw.dans.avbag.metrics").build();
+            jmxReporter.start();
+        }
+        if (prometheusFile != null) {
+            long millis = config.getInterval().toMilliseconds();
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::writePrometheusFile, 0, millis, TimeUnit.MILLISECONDS);
+        }
+        if (config.getPrometheusPort() > 0) {
+            httpServer = HttpServer.create(new InetSocketAddress(config.getPrometheusHost(), config.getPrometheusPort()), 0);
+            httpServer.createContext("/metrics", exchange -> {
+                byte[] body = PrometheusText.format(registry).getBytes(UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", PrometheusText.CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            httpServer.start();
+            log.info("Serving metrics at http://{}:{}/metrics", config.getPrometheusHost(), httpServer.getAddress().getPort());
+        }
+    }
+
+    private void writePrometheusFile() {
+        // the textfile collector must never see a partial file
+        Path temporary = prometheusFile.resolveSibling("." + prometheusFile.getFileName() + ".tmp");
+        try {
+            Files.write(temporary, PrometheusText.format(registry).getBytes(UTF_8));
+            Files.move(temporary, prometheusFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn("Could not write metrics to {}", prometheusFile, e);
+        }
+    }
+
+    /**
+     * Stops exporting, after writing the final values to the Prometheus file.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            writePrometheusFile();
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (jmxReporter != null) {
+            jmxReporter.stop();
+        }
+    }
+}
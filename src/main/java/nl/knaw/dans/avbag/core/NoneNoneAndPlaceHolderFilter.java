@@ -16,21 +16,21 @@
 package nl.knaw.dans.avbag.core;
 
 import lombok.AllArgsConstructor;
+import nl.knaw.dans.avbag.core.FileElements.FileElement;
 import org.w3c.dom.Element;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.List;
 import java.util.function.Predicate;
 
+/**
+ * Selects the &lt;file&gt; elements of place holders and of files with rights NONE/NONE, by looking them up in an index of the files.xml they belong to.
+ */
 @AllArgsConstructor
 public class NoneNoneAndPlaceHolderFilter implements Predicate<Element> {
-    private final PlaceHolders placeHolders;
+    private final FileElements fileElements;
 
     @Override
     public boolean test(Element element) {
-        return placeHolders.getPaths().contains(Paths.get(element.getAttribute("filepath"))) || (
-            XmlUtil.isAccessibleToNone(element) && XmlUtil.isVisibleToNone(element)
-        );
+        FileElement fileElement = fileElements.getByFilePath(element.getAttribute("filepath"));
+        return fileElement != null && (fileElement.isPlaceHolder() || fileElement.isNoneNone());
     }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+/**
+ * How the payload of a revision is placed in the staging directory.
+ */
+public enum PayloadStaging {
+    /**
+     * The payload is copied into the staging directory and renamed or copied to the output directory with the rest of the bag.
+     */
+    COPY,
+    /**
+     * Only the tag and metadata files are written to the staging directory. The payload files are symbolic links to the input and Springfield files,
+     * which are hard-linked or copied into the output directory when the bag is moved there. For a staging directory on a small, fast disk.
+     * <p>
+     * A hard-linked file is shared by the output bag and the inbox or Springfield, so a change in place to either of them changes the other one too.
+     */
+    LINK
+}
@@ -16,25 +16,25 @@
 package nl.knaw.dans.avbag.core;
 
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.bagit.domain.Manifest;
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import static nl.knaw.dans.avbag.core.XmlUtil.writeFilesXml;
 import static org.apache.commons.lang3.ObjectUtils.isEmpty;
 
 @Slf4j
@@ -44,17 +44,68 @@ public class PlaceHolders {
     private final Path bagParent;
     private final Document filesXml;
     private final Map<String, Path> identifierToDestMap = new HashMap<>();
+    private final Set<Path> paths = new HashSet<>();
 
     /**
+     * The payload files of which a manifest says they are empty, or null if there is no manifest to go by.
+     */
+    private final Set<Path> emptyInManifest;
+    private final Set<Path> inManifest;
+
+    /**
+     * Finds the place holders of a bag. The bag itself is not modified, so it can be read-only.
+     *
      * @param bagDir the directory of the bag
      * @throws IOException if the files.xml document cannot be read
      */
-    public PlaceHolders(Path bagDir) throws IOException, ParserConfigurationException, SAXException, TransformerException {
-        this.filesXml = XmlUtil.readXml(bagDir.resolve("metadata/files.xml"));
+    public PlaceHolders(Path bagDir) throws IOException, ParserConfigurationException, SAXException {
+        this(bagDir, XmlUtil.readXml(bagDir.resolve("metadata/files.xml")), Collections.emptySet());
+    }
+
+    /**
+     * Finds the place holders of a bag that is already in memory. Files are recognized as empty by the checksum of the empty file in the payload manifests,
+     * so only those files are checked on disk. Files that are in no manifest are checked on disk as well.
+     *
+     * @param bag the bag, from the files.xml of which the &lt;dct:source&gt; elements of the place holders are removed
+     * @throws IOException if the size of a file cannot be determined
+     */
+    public PlaceHolders(BagSession bag) throws IOException {
+        this(bag.getBagDir(), bag.getFilesXml(), bag.getBag().getPayLoadManifests());
+    }
+
+    private PlaceHolders(Path bagDir, Document filesXml, Set<Manifest> payloadManifests) throws IOException {
+        this.filesXml = filesXml;
         this.bagDir = bagDir;
         bagParent = bagDir.getParent().getFileName();
+        if (payloadManifests.isEmpty()) {
+            emptyInManifest = null;
+            inManifest = null;
+        }
+        else {
+            emptyInManifest = new HashSet<>();
+            inManifest = new HashSet<>();
+            for (Manifest manifest : payloadManifests) {
+                String emptyChecksum = emptyChecksum(manifest.getAlgorithm());
+                for (Map.Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()) {
+                    Path path = bagDir.relativize(entry.getKey()).normalize();
+                    inManifest.add(path);
+                    if (entry.getValue().equalsIgnoreCase(emptyChecksum)) {
+                        emptyInManifest.add(path);
+                    }
+                }
+            }
+        }
         find();
-        writeFilesXml(bagDir, filesXml);
+    }
+
+    private static String emptyChecksum(SupportedAlgorithm algorithm) {
+        try {
+            return Digests.hex(Digests.create(algorithm).digest());
+        }
+        catch (NoSuchAlgorithmException e) {
+            // BagReader would not have read the manifest
+            throw new IllegalStateException(e);
+        }
     }
 
     public boolean hasSameFileIds(PseudoFileSources pseudoFileSources) {
@@ -81,8 +132,11 @@ public class PlaceHolders {
         return (path != null) ? path.toString() : null;
     }
 
-    public List<Path> getPaths() {
-        return new ArrayList<>(identifierToDestMap.values());
+    /**
+     * @return the normalized filepaths of the place holders
+     */
+    public Set<Path> getFilePaths() {
+        return Collections.unmodifiableSet(paths);
     }
 
     private void find() throws IOException {
@@ -99,9 +153,10 @@ public class PlaceHolders {
                 if (isEmpty(filePath)) {
                     log.error("No filepath attribute found: {} {}", bagParent, XmlUtil.serializeNode(fileElement));
                 }
-                else if (0 == Files.size(bagDir.resolve(filePath))) {
+                else if (isEmptyFile(filePath)) {
                     String identifier = identifierNodes.item(0).getTextContent();
                     identifierToDestMap.put(identifier, Paths.get(filePath));
+                    paths.add(FileElements.normalize(filePath));
                     NodeList sourceNode = fileElement.getElementsByTagName("dct:source");
                     if (sourceNode.getLength() > 0) { // Has a <dct:source> child element
                         fileElement.removeChild(sourceNode.item(0));
@@ -113,4 +168,13 @@ public class PlaceHolders {
             }
         }
     }
+
+    private boolean isEmptyFile(String filePath) throws IOException {
+        Path path = FileElements.normalize(filePath);
+        if (emptyInManifest != null && inManifest.contains(path) && !emptyInManifest.contains(path)) {
+            return false;
+        }
+        // the manifest says it is empty, or there is no manifest entry: confirm on disk
+        return 0 == Files.size(bagDir.resolve(filePath));
+    }
 }
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Copies the Springfield files of upcoming bag parents to a cache on local disk, while the current bag parents are converted, so that the conversion
+ * reads them without the latency of the remote storage. One thread fetches the files of at most lookahead bag parents beyond the latest one started, in
+ * the order of the conversion.
+ * <p>
+ * The cache is bounded. When a file does not fit, the least recently used files of which all bag parents are done are evicted; a file that a bag
+ * parent still needs is never evicted, instead the fetching waits. A file shared by several bag parents is fetched once and kept for all of them. A file that is not in the cache, because it was not fetched in time or is larger than the
+ * cache, is read from Springfield as before.
+ * <p>
+ * The files are kept in a directory of their own in the configured cache directory, which is deleted on close. Nothing else in the cache directory is
+ * touched, so it may be shared. A directory left behind by a process that crashed is not deleted automatically, as it may belong to another process that is
+ * still running; it must be removed by an operator.
+ */
+@Slf4j
+public class Prefetcher implements AutoCloseable {
+    private static final String PREFIX = ".avbag-prefetch-";
+
+    private final Path cacheDir;
+    private final long maxBytes;
+    private final int lookahead;
+    private final PseudoFileSources pseudoFileSources;
+    private final Thread thread;
+
+    // by source path, least recently used first
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> done = new HashSet<>();
+    private List<String> bagParents = Collections.emptyList();
+    private int started = 0;
+    private int next = 0;
+    private long usedBytes = 0;
+    private boolean closed = false;
+
+    private Counter hits = new Counter();
+    private Counter misses = new Counter();
+
+    private static class Entry {
+        private final Path file;
+        private final long size;
+        // the bag parents that use the file
+        private final Set<String> bagParents = new HashSet<>();
+
+        private Entry(Path file, long size, String bagParent) {
+            this.file = file;
+            this.size = size;
+            bagParents.add(bagParent);
+        }
+    }
+
+    /**
+     * @param cacheDir          directory on local disk, created if it does not exist; the files are kept in a new directory in it
+     * @param maxBytes          the maximum size of the cache
+     * @param lookahead         the number of bag parents to fetch beyond the latest one started
+     * @param pseudoFileSources the Springfield files per bag parent
+     */
+    public Prefetcher(Path cacheDir, long maxBytes, int lookahead, PseudoFileSources pseudoFileSources) throws IOException {
+        this.maxBytes = maxBytes;
+        this.lookahead = lookahead;
+        this.pseudoFileSources = pseudoFileSources;
+        this.cacheDir = Files.createDirectory(Files.createDirectories(cacheDir.toAbsolutePath()).resolve(PREFIX + UUID.randomUUID()));
+        thread = new Thread(this::run, "prefetch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Registers avbag.prefetch.hits and avbag.prefetch.misses, the number of Springfield files read from the cache and from Springfield, and
+     * avbag.prefetch.cached_bytes.
+     */
+    public void registerMetrics(MetricRegistry registry) {
+        countIn(registry);
+        registry.register("avbag.prefetch.cached_bytes", (Gauge<Long>) this::getUsedBytes);
+    }
+
+    /**
+     * Counts the hits and misses in avbag.prefetch.hits and avbag.prefetch.misses, which are created if they do not exist, so that the prefetchers of a
+     * process add up. To be called before the first bag parent is scheduled.
+     */
+    synchronized void countIn(MetricRegistry registry) {
+        hits = registry.counter("avbag.prefetch.hits");
+        misses = registry.counter("avbag.prefetch.misses");
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @param bagParents the names of the bag parents in the order in which they are converted
+     */
+    public synchronized void schedule(List<String> bagParents) {
+        this.bagParents = new ArrayList<>(bagParents);
+        started = 0;
+        next = 0;
+        notifyAll();
+    }
+
+    /**
+     * To be called when the conversion of a bag parent starts, to move the lookahead window.
+     */
+    public synchronized void started(String bagParent) {
+        started = Math.max(started, bagParents.indexOf(bagParent) + 1);
+        notifyAll();
+    }
+
+    /**
+     * To be called when the conversion of a bag parent ends, successfully or not. Its files may be evicted from then on.
+     */
+    public synchronized void done(String bagParent) {
+        done.add(bagParent);
+        notifyAll();
+    }
+
+    /**
+     * @param bagParent the bag parent that reads the file; the copy is kept until it is done
+     * @param source    a Springfield file
+     * @return the copy of the file in the cache, if it was fetched
+     */
+    public synchronized Optional<Path> get(String bagParent, Path source) {
+        Entry entry = entries.get(source);
+        if (entry == null) {
+            misses.inc();
+            return Optional.empty();
+        }
+        entry.bagParents.add(bagParent);
+        hits.inc();
+        return Optional.of(entry.file);
+    }
+
+    private void run() {
+        try {
+            String bagParent;
+            while ((bagParent = nextBagParent()) != null) {
+                for (Path source : pseudoFileSources.getSpringFieldFiles(bagParent).values()) {
+                    fetch(bagParent, source);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private synchronized String nextBagParent() throws InterruptedException {
+        while (!closed) {
+            // bag parents that are already being converted read from Springfield themselves
+            next = Math.max(next, started);
+            if (next < bagParents.size() && next < started + lookahead) {
+                return bagParents.get(next++);
+            }
+            wait();
+        }
+        return null;
+    }
+
+    private void fetch(String bagParent, Path source) throws InterruptedException {
+        long size;
+        try {
+            size = Files.size(source);
+        }
+        catch (IOException e) {
+            log.warn("Could not prefetch {}", source, e);
+            return;
+        }
+        if (size > maxBytes || isCached(bagParent, source) || !reserve(bagParent, size)) {
+            return;
+        }
+        Path target = cacheDir.resolve(UUID.randomUUID() + "-" + source.getFileName());
+        Path partial = target.resolveSibling(target.getFileName() + ".partial");
+        try {
+            StorageIo.copyFile(source, partial, StorageRoot.SPRINGFIELD, StorageRoot.STAGING);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                entries.put(source, new Entry(target, size, bagParent));
+            }
+            log.debug("Prefetched {}", source);
+        }
+        catch (IOException e) {
+            if (!isClosed()) {
+                log.warn("Could not prefetch {}", source, e);
+            }
+            unreserve(size);
+            try {
+                Files.deleteIfExists(partial);
+            }
+            catch (IOException ignored) {
+                // deleted when the cache is opened again
+            }
+        }
+    }
+
+    /**
+     * Makes room for a file, evicting files of bag parents that are done, least recently used first, or waiting until there are such files.
+     *
+     * @return false if the bag parent was started in the meantime or the prefetcher is closed
+     */
+    private synchronized boolean reserve(String bagParent, long size) throws InterruptedException {
+        while (!closed && usedBytes + size > maxBytes) {
+            evictDone(usedBytes + size - maxBytes);
+            if (usedBytes + size > maxBytes) {
+                if (bagParents.indexOf(bagParent) < started) {
+                    return false;
+                }
+                wait();
+            }
+        }
+        if (closed) {
+            return false;
+        }
+        usedBytes += size;
+        return true;
+    }
+
+    private synchronized boolean isCached(String bagParent, Path source) {
+        // a file shared by bag parents is fetched once, and kept until all of them are done
+        Entry entry = entries.get(source);
+        if (entry == null) {
+            return false;
+        }
+        entry.bagParents.add(bagParent);
+        return true;
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized void unreserve(long size) {
+        usedBytes -= size;
+        notifyAll();
+    }
+
+    private void evictDone(long bytes) {
+        long evicted = 0;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (evicted < bytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (done.containsAll(entry.bagParents)) {
+                iterator.remove();
+                usedBytes -= entry.size;
+                evicted += entry.size;
+                try {
+                    Files.deleteIfExists(entry.file);
+                }
+                catch (IOException e) {
+                    log.warn("Could not evict {}", entry.file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops fetching and deletes the fetched files and the directory they are in.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                Files.deleteIfExists(entry.file);
+            }
+            entries.clear();
+            usedBytes = 0;
+        }
+        // fails if something else was put in it
+        Files.deleteIfExists(cacheDir);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodic progress of a run, logged as one line of key=value pairs to the logger {@code nl.knaw.dans.avbag.progress}, for example:
+ * <pre>
+ * bags_done=3 bags_total=10 bytes_done=7340032 bytes_total=20971520 read_mb_s=41.9 write_mb_s=38.2 hash_mb_s=12.0 elapsed_s=95 eta_s=176
+ * </pre>
+ * The totals are estimated before the run, from the sizes of the input bags and their Springfield files. The rates are those since the previous line,
+ * counted by {@link StorageIo} for the bags of the run, see {@link BagReport}. The ETA extrapolates the average byte rate of the run so far, and is -1 until the first bag is done.
+ */
+@Slf4j(topic = "nl.knaw.dans.avbag.progress")
+public class Progress implements AutoCloseable {
+    private final Counter bytesRead = new Counter();
+    private final Counter bytesWritten = new Counter();
+    private final Counter bytesHashed = new Counter();
+    // the counters of the metric registry, shared with the other runs of the process
+    private Counter readMetric = new Counter();
+    private Counter writtenMetric = new Counter();
+    private Counter hashedMetric = new Counter();
+    private final long bagsTotal;
+    private final long bytesTotal;
+    private final AtomicLong bagsDone = new AtomicLong();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private final ScheduledExecutorService scheduler;
+
+    private long previousNanos = startNanos;
+    private long previousRead = 0L;
+    private long previousWritten = 0L;
+    private long previousHashed = 0L;
+
+    /**
+     * @param bagsTotal  the number of bags to convert
+     * @param bytesTotal the estimated number of bytes of those bags
+     * @param interval   the time between two lines, no lines are logged if null or zero
+     */
+    public Progress(long bagsTotal, long bytesTotal, Duration interval) {
+        this.bagsTotal = bagsTotal;
+        this.bytesTotal = bytesTotal;
+        if (interval == null || interval.isZero()) {
+            scheduler = null;
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> log.info(line()), interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return scheduler != null;
+    }
+
+    /**
+     * @param estimatedBytes the share of the bag in the estimated total
+     */
+    public void bagDone(long estimatedBytes) {
+        bagsDone.incrementAndGet();
+        bytesDone.addAndGet(estimatedBytes);
+    }
+
+    synchronized String line() {
+        long now = System.nanoTime();
+        long read = bytesRead.getCount();
+        long written = bytesWritten.getCount();
+        long hashed = bytesHashed.getCount();
+        double seconds = Math.max(now - previousNanos, 1L) / 1e9;
+        long elapsed = TimeUnit.NANOSECONDS.toSeconds(now - startNanos);
+        long done = bytesDone.get();
+        long eta = done == 0 ? -1 : Math.round((bytesTotal - done) * ((now - startNanos) / 1e9) / done);
+        String line = String.format(Locale.ROOT,
+            "bags_done=%d bags_total=%d bytes_done=%d bytes_total=%d read_mb_s=%.1f write_mb_s=%.1f hash_mb_s=%.1f elapsed_s=%d eta_s=%d",
+            bagsDone.get(), bagsTotal, done, bytesTotal,
+            megabytes(read - previousRead) / seconds, megabytes(written - previousWritten) / seconds, megabytes(hashed - previousHashed) / seconds,
+            elapsed, eta);
+        previousNanos = now;
+        previousRead = read;
+        previousWritten = written;
+        previousHashed = hashed;
+        return line;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    /**
+     * Logs the last line and stops logging.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            log.info(line());
+        }
+    }
+
+    /**
+     * Adds the bytes of the run to the counters avbag.bytes.read, avbag.bytes.written and avbag.bytes.hashed, which are created if they do not exist, so
+     * that the runs of a process add up. To be called before the run starts.
+     */
+    public void registerMetrics(MetricRegistry registry) {
+        readMetric = registry.counter("avbag.bytes.read");
+        writtenMetric = registry.counter("avbag.bytes.written");
+        hashedMetric = registry.counter("avbag.bytes.hashed");
+    }
+
+    void countRead(long bytes) {
+        bytesRead.inc(bytes);
+        readMetric.inc(bytes);
+    }
+
+    void countWritten(long bytes) {
+        bytesWritten.inc(bytes);
+        writtenMetric.inc(bytes);
+    }
+
+    void countHashed(long bytes) {
+        bytesHashed.inc(bytes);
+        hashedMetric.inc(bytes);
+    }
+}
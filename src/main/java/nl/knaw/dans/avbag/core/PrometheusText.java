@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of a registry in the Prometheus text exposition format (version 0.0.4). Dots in the names become underscores, timers become summaries in
+ * seconds, and meters become counters.
+ */
+public final class PrometheusText {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+
+    private PrometheusText() {
+    }
+
+    public static String format(MetricRegistry registry) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Gauge> entry : registry.getGauges().entrySet()) {
+            Object value = entry.getValue().getValue();
+            if (value instanceof Number) {
+                String name = sanitize(entry.getKey());
+                type(text, name, "gauge");
+                sample(text, name, "", ((Number) value).doubleValue());
+            }
+        }
+        for (Map.Entry<String, Counter> entry : registry.getCounters().entrySet()) {
+            String name = sanitize(entry.getKey()) + "_total";
+            type(text, name, "counter");
+            sample(text, name, "", entry.getValue().getCount());
+        }
+        for (Map.Entry<String, Meter> entry : registry.getMeters().entrySet()) {
+            String name = sanitize(entry.getKey()) + "_total";
+            type(text, name, "counter");
+            sample(text, name, "", entry.getValue().getCount());
+        }
+        for (Map.Entry<String, Histogram> entry : registry.getHistograms().entrySet()) {
+            summary(text, sanitize(entry.getKey()), entry.getValue().getCount(), entry.getValue().getSnapshot(), 1.0);
+        }
+        for (Map.Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+            summary(text, sanitize(entry.getKey()) + "_seconds", entry.getValue().getCount(), entry.getValue().getSnapshot(),
+                TimeUnit.SECONDS.toNanos(1));
+        }
+        return text.toString();
+    }
+
+    private static void summary(StringBuilder text, String name, long count, Snapshot snapshot, double divisor) {
+        type(text, name, "summary");
+        for (double quantile : QUANTILES) {
+            sample(text, name, "{quantile=\"" + quantile + "\"}", snapshot.getValue(quantile) / divisor);
+        }
+        // the snapshot is a sample, so the sum is an estimate
+        sample(text, name + "_sum", "", snapshot.getMean() * count / divisor);
+        sample(text, name + "_count", "", count);
+    }
+
+    private static void type(StringBuilder text, String name, String type) {
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, double value) {
+        text.append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            text.append((long) value);
+        }
+        else {
+            text.append(String.format(Locale.ROOT, "%s", value));
+        }
+        text.append('\n');
+    }
+
+    static String sanitize(String name) {
+        return name.replaceAll("[^a-zA-Z0-9_:]", "_");
+    }
+}
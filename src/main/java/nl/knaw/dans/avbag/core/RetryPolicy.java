@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.Value;
+import nl.knaw.dans.avbag.config.RetryConfig;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * When to convert a failed bag again. Only I/O errors that are known to go away, such as a stale NFS file handle, are retried, with an exponentially
+ * growing delay. Other errors, such as invalid bags, would fail again.
+ */
+@Value
+public class RetryPolicy {
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO, 1.0, Collections.emptyList());
+
+    int maxAttempts;
+    Duration initialDelay;
+    Duration maxDelay;
+    double multiplier;
+    List<String> transientMessages;
+
+    public static RetryPolicy of(RetryConfig config) {
+        return new RetryPolicy(
+            config.getMaxAttempts(),
+            config.getInitialDelay().toJavaDuration(),
+            config.getMaxDelay().toJavaDuration(),
+            config.getMultiplier(),
+            config.getTransientMessages().stream().map(message -> message.toLowerCase(Locale.ROOT)).collect(Collectors.toList()));
+    }
+
+    /**
+     * @param e the error of an attempt
+     * @return whether the error or one of its causes is a transient I/O error
+     */
+    public boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedIOException && !Thread.currentThread().isInterrupted()) {
+                // a timeout rather than a shutdown
+                return true;
+            }
+            if (cause instanceof IOException && cause.getMessage() != null) {
+                String message = cause.getMessage().toLowerCase(Locale.ROOT);
+                if (transientMessages.stream().anyMatch(message::contains)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param attempt the attempt that failed, starting at 1
+     * @return the time to wait before the next attempt: the initial delay times multiplier^(attempt - 1), at most the maximum delay, plus up to 10%
+     *     jitter so that parallel conversions do not retry in lockstep
+     */
+    public long delayMillis(int attempt) {
+        double delay = initialDelay.toMillis() * Math.pow(multiplier, attempt - 1);
+        long capped = (long) Math.min(delay, maxDelay.toMillis());
+        return capped + ThreadLocalRandom.current().nextLong(capped / 10 + 1);
+    }
+}
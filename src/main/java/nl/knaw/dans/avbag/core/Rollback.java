@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The directories created by one attempt to convert a bag, to be removed when the attempt fails, in reverse order. Once the input is deleted there is no
+ * way back, so from {@link #commit()} on nothing is removed.
+ */
+@Slf4j
+class Rollback {
+    private final Deque<Path> dirs = new ArrayDeque<>();
+    private final Deque<StorageRoot> roots = new ArrayDeque<>();
+    private boolean committed = false;
+
+    /**
+     * @param dir  a directory that is about to be created
+     * @param root where it is created
+     */
+    void add(Path dir, StorageRoot root) {
+        dirs.push(dir);
+        roots.push(root);
+    }
+
+    void commit() {
+        committed = true;
+    }
+
+    /**
+     * @return whether all directories are removed
+     */
+    boolean run() {
+        if (committed) {
+            return false;
+        }
+        boolean complete = true;
+        while (!dirs.isEmpty()) {
+            Path dir = dirs.pop();
+            StorageRoot root = roots.pop();
+            try {
+                StorageIo.deleteDirectory(dir, root);
+                log.debug("Rolled back {}", dir);
+            }
+            catch (IOException | RuntimeException e) {
+                log.warn("Could not roll back {}", dir, e);
+                complete = false;
+            }
+        }
+        return complete;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The order in which the bag parents of a run are converted. With parallel conversion, the order determines how long the run takes: a large bag parent
+ * that starts last keeps one worker busy while the others are idle.
+ */
+public enum SchedulingPolicy {
+    /**
+     * By name, as in the directory listing.
+     */
+    DIRECTORY {
+        @Override
+        List<Path> order(Map<Path, BagSize> bagParents) {
+            return bagParents.keySet().stream().sorted().collect(Collectors.toList());
+        }
+    },
+    /**
+     * Largest first (LPT), which keeps the tail of a parallel run short.
+     */
+    LARGEST_FIRST {
+        @Override
+        List<Path> order(Map<Path, BagSize> bagParents) {
+            return bySize(bagParents, bySize(bagParents).reversed());
+        }
+    },
+    /**
+     * Smallest first, to see results and failures as early as possible.
+     */
+    SMALLEST_FIRST {
+        @Override
+        List<Path> order(Map<Path, BagSize> bagParents) {
+            return bySize(bagParents, bySize(bagParents));
+        }
+    },
+    /**
+     * Alternately a bag parent that mostly reads from the input and one that mostly reads from Springfield, each largest first, so that both are busy.
+     */
+    INTERLEAVED {
+        @Override
+        List<Path> order(Map<Path, BagSize> bagParents) {
+            List<Path> largestFirst = LARGEST_FIRST.order(bagParents);
+            Iterator<Path> input = largestFirst.stream().filter(path -> bagParents.get(path).getMainRoot() == StorageRoot.INPUT).iterator();
+            Iterator<Path> springfield = largestFirst.stream().filter(path -> bagParents.get(path).getMainRoot() == StorageRoot.SPRINGFIELD).iterator();
+            List<Path> interleaved = new ArrayList<>();
+            while (input.hasNext() || springfield.hasNext()) {
+                if (input.hasNext()) {
+                    interleaved.add(input.next());
+                }
+                if (springfield.hasNext()) {
+                    interleaved.add(springfield.next());
+                }
+            }
+            return interleaved;
+        }
+    };
+
+    /**
+     * @param bagParents the bag parents with their sizes
+     * @return the bag parents in the order to convert them
+     */
+    abstract List<Path> order(Map<Path, BagSize> bagParents);
+
+    /**
+     * @return whether the order depends on the sizes of the bag parents
+     */
+    boolean needsSizes() {
+        return this != DIRECTORY;
+    }
+
+    private static Comparator<Path> bySize(Map<Path, BagSize> bagParents) {
+        // by name for equal sizes, so that the order is reproducible
+        return Comparator.<Path> comparingLong(path -> bagParents.get(path).getTotal()).thenComparing(Comparator.naturalOrder());
+    }
+
+    private static List<Path> bySize(Map<Path, BagSize> bagParents, Comparator<Path> comparator) {
+        return bagParents.keySet().stream().sorted(comparator).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * One of n disjoint partitions of the bag parents in an inbox. The partition of a bag parent depends only on its name, so hosts sharing an inbox agree on it
+ * without coordination.
+ */
+@Value
+public class Shard {
+    public static final Shard ALL = new Shard(0, 1);
+
+    int index;
+    int count;
+
+    public Shard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException(format("Invalid shard {0}/{1}, expected i/n with 0 <= i < n", index, count));
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * @param value a shard in the form i/n, for example 0/4
+     * @return the shard
+     */
+    public static Shard parse(String value) {
+        String[] parts = value.trim().split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException(format("Invalid shard {0}, expected i/n with 0 <= i < n", value));
+        }
+        try {
+            return new Shard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(format("Invalid shard {0}, expected i/n with 0 <= i < n", value), e);
+        }
+    }
+
+    public boolean contains(String bagParent) {
+        // CRC32 rather than String.hashCode: the partitioning must not depend on the JVM
+        CRC32 crc = new CRC32();
+        crc.update(bagParent.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue() % count == index;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
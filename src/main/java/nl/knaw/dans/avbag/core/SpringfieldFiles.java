@@ -15,70 +15,89 @@
  */
 package nl.knaw.dans.avbag.core;
 
+import lombok.Setter;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.avbag.core.FileElements.FileElement;
-import nl.knaw.dans.bagit.exceptions.InvalidBagitFileFormatException;
-import nl.knaw.dans.bagit.exceptions.MaliciousPathException;
-import nl.knaw.dans.bagit.exceptions.UnparsableVersionException;
-import nl.knaw.dans.bagit.exceptions.UnsupportedAlgorithmException;
-import org.apache.commons.io.FileUtils;
+import nl.knaw.dans.avbag.core.FileElements.Rights;
 import org.apache.commons.lang3.StringUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import static nl.knaw.dans.avbag.core.BagInfoManager.updateBagVersion;
-import static nl.knaw.dans.avbag.core.ManifestManager.updateManifests;
 import static org.apache.commons.io.FilenameUtils.getExtension;
 import static org.apache.commons.io.FilenameUtils.removeExtension;
 
 @Slf4j
 public class SpringfieldFiles {
+    private final String bagParent;
     private final Map<String, Path> springfieldFiles; // easy-file ID -> path to file in springfield dir
-    private List<FileElement> filesInInputFilesXml = new ArrayList<>(); // easy-file ID -> <dct:identifier> element in orgFilesXml
+    private final FileElements filesInInputFilesXml;
 
-    public SpringfieldFiles(Path bagDir, PseudoFileSources pseudoFileSources) throws IOException, ParserConfigurationException, SAXException {
-        Document orgFilesXmlCopy = XmlUtil.readXml(bagDir.resolve("metadata/files.xml"));
-        this.springfieldFiles = pseudoFileSources.getSpringFieldFiles(bagDir.getParent().getFileName().toString());
-        filesInInputFilesXml = FileElements.read(orgFilesXmlCopy);
+    /**
+     * Where copies of the springfield files may be, null for none.
+     */
+    @Setter
+    private Prefetcher prefetcher;
+
+    /**
+     * Where the springfield files added before are, null to copy every file.
+     */
+    @Setter
+    private SpringfieldStore store;
+
+    public SpringfieldFiles(BagSession inputBag, PlaceHolders placeHolders, PseudoFileSources pseudoFileSources) {
+        this.bagParent = inputBag.getBagDir().getParent().getFileName().toString();
+        this.springfieldFiles = pseudoFileSources.getSpringFieldFiles(bagParent);
+        filesInInputFilesXml = FileElements.index(inputBag.getFilesXml(), placeHolders.getFilePaths(), springfieldFiles.keySet(), false);
         for (String easyFileId : springfieldFiles.keySet()) {
-            if (filesInInputFilesXml.stream().noneMatch(fileElement -> fileElement.getFileId().equals(easyFileId))) {
+            if (filesInInputFilesXml.getByFileId(easyFileId) == null) {
                 throw new IllegalStateException("Not all springfield files in sources.csv have matching easy-file ID in files.xml");
             }
         }
         // If all files are NONE/NONE, raise an error
-        if (filesInInputFilesXml.stream().allMatch(fileElement -> fileElement.getAccessibleToRights().equals("NONE") && fileElement.getVisibleToRights().equals("NONE"))) {
+        if (filesInInputFilesXml.isAllNoneNone()) {
             throw new IllegalStateException("All files in files.xml have rights NONE/NONE");
         }
     }
 
+    /**
+     * @return whether sources.csv maps any file of the bag to a springfield file
+     */
     public boolean hasFilesToAdd() {
-        return !filesInInputFilesXml.isEmpty();
+        return !springfieldFiles.isEmpty();
     }
 
-    public void addFiles(PlaceHolders placeHolders, Path bagDir, Path bagDirPreviousVersion)
-        throws IOException, ParserConfigurationException, SAXException, TransformerException, MaliciousPathException, UnparsableVersionException, UnsupportedAlgorithmException,
-        InvalidBagitFileFormatException, NoSuchAlgorithmException {
-        Document newFilesXml = XmlUtil.readXml(bagDir.resolve("metadata/files.xml"));
+    /**
+     * Adds the springfield files to the bag of the session, next to their place holders, and makes it a new version of the previous bag. The changes are
+     * written with the session.
+     *
+     * @return the added files, relative to the bag directory
+     */
+    public List<Path> addFiles(PlaceHolders placeHolders, BagSession bag, Path bagDirPreviousVersion)
+        throws IOException, XMLStreamException, NoSuchAlgorithmException {
+        Document newFilesXml = bag.getFilesXml();
         List<Node> newFileList = new ArrayList<>();
-        for (FileElement fileInInputFilesXml : filesInInputFilesXml) {
-            String fileId = fileInInputFilesXml.getFileId();
-            if (springfieldFiles.get(fileId) != null) {
-                String added = addPayloadFile(springfieldFiles.get(fileId), placeHolders.getDestPath(fileId), bagDir);
+        List<Path> addedFiles = new ArrayList<>();
+        for (FileElement fileInInputFilesXml : filesInInputFilesXml.getAll()) {
+            if (fileInInputFilesXml.isSpringfieldBacked()) {
+                String fileId = fileInInputFilesXml.getFileId();
+                String added = addPayloadFile(springfieldFiles.get(fileId), placeHolders.getDestPath(fileId), bag);
                 Element newFileElement = newFileElement(added, fileInInputFilesXml, newFilesXml);
                 newFileList.add(newFileElement);
+                addedFiles.add(Paths.get(added));
             }
         }
         // separate loops to not interfere prematurely
@@ -86,11 +105,11 @@ public class SpringfieldFiles {
             newFilesXml.getElementsByTagName("files").item(0)
                 .appendChild(newFile);
         }
-        XmlUtil.writeFilesXml(bagDir, newFilesXml);
-        updateManifests(updateBagVersion(bagDir, bagDirPreviousVersion));
+        updateBagVersion(bag, bagDirPreviousVersion);
+        return addedFiles;
     }
 
-    private String addPayloadFile(Path source, String placeHolder, Path bagDir) throws IOException {
+    private String addPayloadFile(Path source, String placeHolder, BagSession bag) throws IOException, NoSuchAlgorithmException {
         String sourceExtension = getExtension(source.toString());
         String placeHolderExtension = getExtension(placeHolder);
         String newExtension = sourceExtension.equals(placeHolderExtension)
@@ -98,11 +117,17 @@ public class SpringfieldFiles {
             : "." + sourceExtension;
 
         String destination = removeExtension(placeHolder) + newExtension;
-        FileUtils.copyFile(
-            source.toFile(),
-            bagDir.resolve(destination).toFile(),
-            true
-        );
+        ConversionEvents.FileEvent event = new ConversionEvents.FileEvent();
+        event.begin();
+        Path cached = prefetcher == null ? null : prefetcher.get(bagParent, source).orElse(null);
+        bag.addPayloadFile(source, cached, Paths.get(destination), StorageRoot.SPRINGFIELD, store);
+        if (event.shouldCommit()) {
+            event.bag = BagReport.currentBagParent();
+            event.operation = "add";
+            event.path = destination;
+            event.bytes = Files.size(bag.getBagDir().resolve(destination));
+            event.commit();
+        }
         return destination;
     }
 
@@ -114,9 +139,9 @@ public class SpringfieldFiles {
         return newElement;
     }
 
-    private Element newRightsElement(String tag, String text, Document newFilesXml) {
+    private Element newRightsElement(String tag, Rights rights, Document newFilesXml) {
         Element rightsElement = newFilesXml.createElement(tag);
-        rightsElement.setTextContent(text);
+        rightsElement.setTextContent(rights.name());
         return rightsElement;
     }
 }
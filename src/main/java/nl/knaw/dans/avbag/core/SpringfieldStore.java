@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A store of the Springfield files copied during one run, in a directory in the staging directory. A Springfield file that is added to several bags,
+ * for example because it is referenced by several easy-file ids or bag parents, is copied into the store once; the bags get hard links to the copy. A
+ * file in Springfield is identified by its real path, size and last modified time, so a file that changes during the run is copied again.
+ * <p>
+ * Only files with more than one expected use are stored, and a stored file is removed from the store at its last expected use, so the store holds the
+ * shared files of the bags in progress rather than all Springfield files of the run. A file that is used more often than expected, for example by a
+ * retried bag, is copied again.
+ * <p>
+ * The checksums of a stored file are kept with it, so that a hard link does not cost a read of the file either, unless a bag has a manifest algorithm
+ * that was not calculated yet.
+ */
+@Slf4j
+public class SpringfieldStore implements AutoCloseable {
+    public static final String DIR_NAME = ".springfield-store";
+
+    private final Path dir;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // per key, removed when no thread uses it anymore
+    private final Map<String, Lock> locks = new ConcurrentHashMap<>();
+    // expected uses left per real path of a source, removed at the last one
+    private final Map<Path, Integer> uses;
+    private final AtomicLong storedFiles = new AtomicLong();
+    private final AtomicLong linkedFiles = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final Path file;
+        private final long size;
+        private final Map<SupportedAlgorithm, String> checksums;
+    }
+
+    private static class Lock {
+        // guarded by ConcurrentHashMap.compute on the locks map
+        private int users;
+    }
+
+    /**
+     * @param stagingDir the staging directory, in which the store is created as {@link #DIR_NAME}; a store left behind is deleted
+     * @param uses       the number of times each Springfield file, by its real path, is expected to be added in the run
+     */
+    public SpringfieldStore(Path stagingDir, Map<Path, Integer> uses) throws IOException {
+        this.dir = stagingDir.resolve(DIR_NAME);
+        this.uses = new ConcurrentHashMap<>(uses);
+        StorageIo.deleteDirectory(dir, StorageRoot.STAGING);
+        Files.createDirectory(dir);
+    }
+
+    /**
+     * Hard-links a Springfield file into a bag, copying it into the store first if it is not there yet. At the only or last expected use of the file, it
+     * is copied into the bag, or hard-linked and removed from the store.
+     *
+     * @param source     the file in Springfield
+     * @param cached     a copy of the source on local disk to read instead, or null
+     * @param target     the file in the bag
+     * @param algorithms the algorithms of the payload manifests of the bag
+     * @return the checksums of the file per algorithm
+     */
+    public Map<SupportedAlgorithm, String> add(Path source, Path cached, Path target, Collection<SupportedAlgorithm> algorithms)
+        throws IOException, NoSuchAlgorithmException {
+        Path realSource = source.toRealPath();
+        long size = Files.size(realSource);
+        String key = realSource + ":" + size + ":" + Files.getLastModifiedTime(realSource).toMillis();
+        Path readFrom = cached == null ? source : cached;
+        StorageRoot readRoot = cached == null ? StorageRoot.SPRINGFIELD : StorageRoot.STAGING;
+        Lock lock = locks.compute(key, (k, l) -> {
+            Lock locked = l == null ? new Lock() : l;
+            locked.users++;
+            return locked;
+        });
+        try {
+            synchronized (lock) {
+                return add(key, realSource, readFrom, readRoot, target, size, algorithms);
+            }
+        }
+        finally {
+            locks.computeIfPresent(key, (k, l) -> --l.users == 0 ? null : l);
+        }
+    }
+
+    private Map<SupportedAlgorithm, String> add(String key, Path realSource, Path readFrom, StorageRoot readRoot, Path target, long size,
+        Collection<SupportedAlgorithm> algorithms) throws IOException, NoSuchAlgorithmException {
+        Integer left = uses.computeIfPresent(realSource, (p, n) -> n > 1 ? n - 1 : null);
+        int usesLeft = left == null ? 0 : left;
+        Entry entry = entries.get(key);
+        if (entry == null && usesLeft <= 0) {
+            // not shared (anymore), no need to keep a copy
+            return copy(readFrom, readRoot, target, size, algorithms).checksums;
+        }
+        if (entry == null) {
+            entry = copy(readFrom, readRoot, dir.resolve(UUID.randomUUID().toString()), size, algorithms);
+            entries.put(key, entry);
+            storedFiles.incrementAndGet();
+        }
+        else {
+            complete(entry, algorithms);
+            linkedFiles.incrementAndGet();
+            savedBytes.addAndGet(size);
+        }
+        Map<SupportedAlgorithm, String> checksums = new HashMap<>();
+        for (SupportedAlgorithm algorithm : algorithms) {
+            checksums.put(algorithm, entry.checksums.get(algorithm));
+        }
+        link(entry.file, target);
+        if (usesLeft <= 0) {
+            entries.remove(key);
+            StorageIo.delete(entry.file, StorageRoot.STAGING);
+        }
+        return checksums;
+    }
+
+    /**
+     * @return the number of shared Springfield files copied into the store
+     */
+    public long getStoredFiles() {
+        return storedFiles.get();
+    }
+
+    /**
+     * @return the number of times a Springfield file was hard-linked from the store instead of copied again
+     */
+    public long getLinkedFiles() {
+        return linkedFiles.get();
+    }
+
+    /**
+     * @return the number of bytes not copied thanks to the store
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    private static Entry copy(Path source, StorageRoot from, Path file, long size, Collection<SupportedAlgorithm> algorithms)
+        throws IOException, NoSuchAlgorithmException {
+        Map<SupportedAlgorithm, MessageDigest> digests = new LinkedHashMap<>();
+        for (SupportedAlgorithm algorithm : algorithms) {
+            digests.put(algorithm, Digests.create(algorithm));
+        }
+        StorageIo.copyFile(source, file, from, StorageRoot.STAGING, digests.values());
+        Map<SupportedAlgorithm, String> checksums = new HashMap<>();
+        digests.forEach((algorithm, digest) -> checksums.put(algorithm, Digests.hex(digest.digest())));
+        return new Entry(file, size, checksums);
+    }
+
+    private void complete(Entry entry, Collection<SupportedAlgorithm> algorithms) throws IOException, NoSuchAlgorithmException {
+        List<SupportedAlgorithm> missing = new ArrayList<>();
+        List<MessageDigest> digests = new ArrayList<>();
+        for (SupportedAlgorithm algorithm : algorithms) {
+            if (!entry.checksums.containsKey(algorithm)) {
+                missing.add(algorithm);
+                digests.add(Digests.create(algorithm));
+            }
+        }
+        if (!missing.isEmpty()) {
+            StorageIo.digest(entry.file, StorageRoot.STAGING, digests);
+            for (int i = 0; i < missing.size(); i++) {
+                entry.checksums.put(missing.get(i), Digests.hex(digests.get(i).digest()));
+            }
+        }
+    }
+
+    private static void link(Path stored, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, stored);
+        }
+        catch (UnsupportedOperationException | FileSystemException e) {
+            if (e instanceof FileAlreadyExistsException) {
+                // a bag that already has the file is not to be overwritten
+                throw (FileAlreadyExistsException) e;
+            }
+            log.debug("Could not hard-link {}, copying it", target, e);
+            StorageIo.copyFile(stored, target, StorageRoot.STAGING, StorageRoot.STAGING);
+        }
+    }
+
+    /**
+     * Deletes the store. Bags in the output directory keep their hard links.
+     */
+    @Override
+    public void close() throws IOException {
+        StorageIo.deleteDirectory(dir, StorageRoot.STAGING);
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The copy, delete and read paths of the converter, subject to the {@link Throttling} of the storage roots involved. Without limits, files are copied by
+ * the same library calls as before throttling existed, one by one, so that the sizes come from the walk. The bytes are counted in the {@link BagReport} of
+ * the current thread, if any, and in the {@link Progress} of its run.
+ */
+public final class StorageIo {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private StorageIo() {
+    }
+
+    public static void copyDirectory(Path source, Path target, StorageRoot from, StorageRoot to) throws IOException {
+        boolean unlimited = Throttling.of(from).isUnlimited() && Throttling.of(to).isUnlimited();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Throttling.of(to).acquireOperation();
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path targetFile = target.resolve(source.relativize(file));
+                if (unlimited) {
+                    checkInterrupted();
+                    FileUtils.copyFile(file.toFile(), targetFile.toFile(), true);
+                    BagReport.countCopied(attrs.size());
+                    Fsync.syncWritten(targetFile);
+                }
+                else {
+                    copyFile(file, targetFile, from, to);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Creates a copy of a bag like {@link #copyDirectory}, except that the payload files, those under data/, become symbolic links to the real paths of the
+     * source files. Only the tag files are written. Links in the source are resolved, so a link never points to another link.
+     */
+    public static void linkPayload(Path source, Path target, StorageRoot from, StorageRoot to) throws IOException {
+        Path payload = source.resolve("data");
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Throttling.of(to).acquireOperation();
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path targetFile = target.resolve(source.relativize(file));
+                if (file.startsWith(payload)) {
+                    linkFile(file, targetFile, to);
+                }
+                else {
+                    copyFile(file, targetFile, from, to);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Copies a bag like {@link #copyDirectory}, or links its payload like {@link #linkPayload}, and calculates checksums of the payload files on the way.
+     * When copying, this costs no extra reads; when linking, the payload files are read for the checksums only.
+     *
+     * @param algorithms the algorithms to calculate
+     * @return the checksums per payload file in the target
+     */
+    public static Map<Path, Map<SupportedAlgorithm, String>> copyHashingPayload(Path source, Path target, StorageRoot from, StorageRoot to, boolean link,
+        Collection<SupportedAlgorithm> algorithms) throws IOException {
+        Path payload = source.resolve("data");
+        Map<Path, Map<SupportedAlgorithm, String>> checksums = new HashMap<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Throttling.of(to).acquireOperation();
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path targetFile = target.resolve(source.relativize(file));
+                if (!file.startsWith(payload)) {
+                    copyFile(file, targetFile, from, to);
+                    return FileVisitResult.CONTINUE;
+                }
+                Map<SupportedAlgorithm, MessageDigest> digests = new LinkedHashMap<>();
+                for (SupportedAlgorithm algorithm : algorithms) {
+                    try {
+                        digests.put(algorithm, Digests.create(algorithm));
+                    }
+                    catch (NoSuchAlgorithmException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                if (link) {
+                    digest(file, from, digests.values());
+                    linkFile(file, targetFile, to);
+                }
+                else {
+                    copyFile(file, targetFile, from, to, digests.values());
+                }
+                Map<SupportedAlgorithm, String> fileChecksums = new HashMap<>();
+                digests.forEach((algorithm, digest) -> fileChecksums.put(algorithm, Digests.hex(digest.digest())));
+                checksums.put(targetFile, fileChecksums);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return checksums;
+    }
+
+    /**
+     * Creates a symbolic link to the real path of a file. Missing parent directories of the link are created.
+     */
+    public static void linkFile(Path source, Path link, StorageRoot to) throws IOException {
+        checkInterrupted();
+        Throttling.of(to).acquireOperation();
+        Files.createDirectories(link.getParent());
+        Files.createSymbolicLink(link, source.toRealPath());
+    }
+
+    /**
+     * Reads a file only to feed its bytes to the digests.
+     *
+     * @param digests fresh digests, to be completed by the caller
+     */
+    public static void digest(Path file, StorageRoot root, Collection<MessageDigest> digests) throws IOException {
+        checkInterrupted();
+        Throttle reads = Throttling.of(root);
+        reads.acquireOperation();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                reads.acquireBytes(n);
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, n);
+                }
+                BagReport.countHashed(n, true);
+            }
+        }
+    }
+
+    /**
+     * Copies a file, preserving its last modified time. Missing parent directories of the target are created.
+     */
+    public static void copyFile(Path source, Path target, StorageRoot from, StorageRoot to) throws IOException {
+        checkInterrupted();
+        if (Throttling.of(from).isUnlimited() && Throttling.of(to).isUnlimited()) {
+            FileUtils.copyFile(source.toFile(), target.toFile(), true);
+            BagReport.countCopied(Files.size(target));
+            Fsync.syncWritten(target);
+            return;
+        }
+        copyFile(source, target, from, to, Collections.emptyList());
+    }
+
+    /**
+     * Copies a file like {@link #copyFile(Path, Path, StorageRoot, StorageRoot)}, and feeds the bytes to the digests on the way, so that checksums are
+     * calculated without reading the file a second time.
+     *
+     * @param digests fresh digests, to be completed by the caller
+     */
+    public static void copyFile(Path source, Path target, StorageRoot from, StorageRoot to, Collection<MessageDigest> digests) throws IOException {
+        checkInterrupted();
+        Throttle reads = Throttling.of(from);
+        Throttle writes = Throttling.of(to);
+        reads.acquireOperation();
+        writes.acquireOperation();
+        Files.createDirectories(target.getParent());
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try (InputStream in = Files.newInputStream(source); OutputStream out = Files.newOutputStream(target)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                reads.acquireBytes(n);
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, n);
+                }
+                writes.acquireBytes(n);
+                out.write(buffer, 0, n);
+                BagReport.countCopied(n);
+                if (!digests.isEmpty()) {
+                    BagReport.countHashed(n, false);
+                }
+            }
+        }
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+        Fsync.syncWritten(target);
+    }
+
+    /**
+     * @return true if the file was deleted, like {@link java.io.File#delete()}
+     */
+    public static boolean delete(Path file, StorageRoot root) throws IOException {
+        Throttling.of(root).acquireOperation();
+        // the size of a link, not of the file it points to
+        long size = BagReport.isActive() && Files.exists(file, LinkOption.NOFOLLOW_LINKS)
+            ? Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).size()
+            : 0L;
+        boolean deleted = file.toFile().delete();
+        if (deleted) {
+            BagReport.countDeleted(size);
+        }
+        return deleted;
+    }
+
+    /**
+     * Stops a copy between two files when the thread is interrupted, as reads and writes without limits do not notice. Deletes go on, so that a partial
+     * copy can be rolled back.
+     */
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted between files");
+        }
+    }
+
+    public static void deleteDirectory(Path dir, StorageRoot root) throws IOException {
+        Throttle throttle = Throttling.of(root);
+        // when counting, the sizes come from the walk that deletes
+        if (throttle.isUnlimited() && !BagReport.isActive()) {
+            FileUtils.deleteDirectory(dir.toFile());
+            return;
+        }
+        if (!Files.exists(dir)) {
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                throttle.acquireOperation();
+                Files.delete(file);
+                BagReport.countDeleted(attrs.size());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                throttle.acquireOperation();
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets limiting the bytes and the file operations per second on one {@link StorageRoot}. A bucket holds at most one second worth of tokens. A
+ * request larger than the available tokens is granted, but makes the caller sleep until the debt is paid off, so large chunks are limited as well.
+ * <p>
+ * A rate of 0 means no limit. Rates can be changed at any time, also via JMX (see {@link ThrottleMXBean}).
+ */
+public class Throttle implements ThrottleMXBean {
+    private final Bucket bytes = new Bucket();
+    private final Bucket operations = new Bucket();
+
+    public Throttle(long bytesPerSecond, long operationsPerSecond) {
+        setBytesPerSecond(bytesPerSecond);
+        setOperationsPerSecond(operationsPerSecond);
+    }
+
+    public void acquireBytes(long amount) throws InterruptedIOException {
+        sleep(bytes.reserve(amount));
+    }
+
+    public void acquireOperation() throws InterruptedIOException {
+        sleep(operations.reserve(1));
+    }
+
+    public boolean isUnlimited() {
+        return bytes.isUnlimited() && operations.isUnlimited();
+    }
+
+    @Override
+    public long getBytesPerSecond() {
+        return bytes.getRate();
+    }
+
+    @Override
+    public void setBytesPerSecond(long bytesPerSecond) {
+        bytes.setRate(bytesPerSecond);
+    }
+
+    @Override
+    public long getOperationsPerSecond() {
+        return operations.getRate();
+    }
+
+    @Override
+    public void setOperationsPerSecond(long operationsPerSecond) {
+        operations.setRate(operationsPerSecond);
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled");
+        }
+    }
+
+    private static class Bucket {
+        private long rate;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        synchronized boolean isUnlimited() {
+            return rate <= 0;
+        }
+
+        synchronized long getRate() {
+            return rate;
+        }
+
+        synchronized void setRate(long rate) {
+            refill();
+            this.rate = Math.max(0, rate);
+            this.tokens = Math.min(tokens, this.rate);
+        }
+
+        /**
+         * @return the nanoseconds to wait before the reserved amount may be used
+         */
+        synchronized long reserve(long amount) {
+            if (rate <= 0) {
+                return 0;
+            }
+            refill();
+            tokens -= amount;
+            return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / rate);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            if (rate > 0) {
+                tokens = Math.min(rate, tokens + (now - lastRefill) * (double) rate / 1e9);
+            }
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+/**
+ * Management interface to inspect and change the limits of a {@link Throttle} while a conversion runs, for example with jconsole.
+ */
+public interface ThrottleMXBean {
+
+    long getBytesPerSecond();
+
+    void setBytesPerSecond(long bytesPerSecond);
+
+    long getOperationsPerSecond();
+
+    void setOperationsPerSecond(long operationsPerSecond);
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.avbag.config.ThrottleConfig;
+import nl.knaw.dans.avbag.config.ThrottlingConfig;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The I/O limits per {@link StorageRoot}. They are process wide, because the storage they protect is shared by everything that runs in the process.
+ */
+@Slf4j
+public final class Throttling {
+    private static final Map<StorageRoot, Throttle> throttles;
+
+    static {
+        Map<StorageRoot, Throttle> map = new EnumMap<>(StorageRoot.class);
+        for (StorageRoot root : StorageRoot.values()) {
+            map.put(root, new Throttle(0, 0));
+        }
+        throttles = Collections.unmodifiableMap(map);
+    }
+
+    private static boolean registered = false;
+
+    private Throttling() {
+    }
+
+    public static Throttle of(StorageRoot root) {
+        return throttles.get(root);
+    }
+
+    /**
+     * Applies the configured limits and makes them adjustable at runtime via JMX, as nl.knaw.dans.avbag:type=Throttle,name=&lt;storage root&gt;.
+     *
+     * @param config the limits
+     */
+    public static synchronized void configure(ThrottlingConfig config) {
+        apply(StorageRoot.INPUT, config.getInput());
+        apply(StorageRoot.DARKARCHIVE, config.getDarkarchive());
+        apply(StorageRoot.SPRINGFIELD, config.getSpringfield());
+        apply(StorageRoot.STAGING, config.getStaging());
+        apply(StorageRoot.OUTPUT, config.getOutput());
+        if (!registered) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Map.Entry<StorageRoot, Throttle> entry : throttles.entrySet()) {
+                try {
+                    server.registerMBean(entry.getValue(), new ObjectName("nl.knaw.dans.avbag:type=Throttle,name=" + entry.getKey().name().toLowerCase()));
+                }
+                catch (JMException e) {
+                    log.warn("Could not register throttle for {} with JMX", entry.getKey(), e);
+                }
+            }
+            registered = true;
+        }
+    }
+
+    private static void apply(StorageRoot root, ThrottleConfig config) {
+        Throttle throttle = throttles.get(root);
+        throttle.setBytesPerSecond(config.getBytesPerSecond());
+        throttle.setOperationsPerSecond(config.getOperationsPerSecond());
+        if (!throttle.isUnlimited()) {
+            log.info("I/O on {} limited to {} bytes/s and {} operations/s (0 is unlimited)", root, config.getBytesPerSecond(), config.getOperationsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Deletes converted input in the background. A bag parent is renamed into the trash directory, which is atomic, so it disappears from the inbox at once
+ * and the next bag does not wait for the deletion of its files. A fixed number of threads then deletes the trash.
+ * <p>
+ * The trashed directories are recognized by their suffix, so directories left behind by a crash, completely or partially deleted, are deleted when the
+ * trash is opened again. Anything else in the trash directory is left alone.
+ */
+@Slf4j
+public class Trash implements AutoCloseable {
+    private static final String SUFFIX = ".avbag-trash";
+
+    private final Path dir;
+    private final ExecutorService executor;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * @param dir     the trash directory, on the file system of the inbox; created if it does not exist
+     * @param threads the number of directories deleted in parallel
+     */
+    public Trash(Path dir, int threads) throws IOException {
+        this.dir = dir.toAbsolutePath();
+        Files.createDirectories(this.dir);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, "trash-" + threadNumber.incrementAndGet()));
+        List<Path> leftovers;
+        try (Stream<Path> list = Files.list(this.dir)) {
+            leftovers = list
+                .filter(path -> path.getFileName().toString().endsWith(SUFFIX) && Files.isDirectory(path))
+                .collect(Collectors.toList());
+        }
+        if (!leftovers.isEmpty()) {
+            log.info("Deleting {} directories left in {}", leftovers.size(), this.dir);
+            leftovers.forEach(this::deleteLater);
+        }
+    }
+
+    /**
+     * Registers the number of directories waiting to be deleted as avbag.trash.pending.
+     */
+    public void registerMetrics(MetricRegistry registry) {
+        registry.register("avbag.trash.pending", (Gauge<Integer>) pending::get);
+    }
+
+    /**
+     * Moves a directory of the inbox to the trash. If the trash is on another file system, the directory is deleted in place instead.
+     */
+    public void dispose(Path directory) throws IOException {
+        Path trashed = dir.resolve(directory.getFileName() + "-" + UUID.randomUUID() + SUFFIX);
+        try {
+            Files.move(directory, trashed, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            log.warn("{} is on another file system than {}, deleting it in place", directory, dir);
+            StorageIo.deleteDirectory(directory, StorageRoot.INPUT);
+            return;
+        }
+        deleteLater(trashed);
+    }
+
+    private void deleteLater(Path trashed) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                StorageIo.deleteDirectory(trashed, StorageRoot.INPUT);
+                log.debug("Deleted {}", trashed);
+            }
+            catch (IOException | RuntimeException e) {
+                // deleted when the trash is opened again
+                log.warn("Could not delete {}", trashed, e);
+            }
+            finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Waits until the trash is empty. When interrupted, the remaining directories are left for the next time the trash is opened.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        if (pending.get() > 0) {
+            log.info("Waiting for {} directories in the trash to be deleted", pending.get());
+        }
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -17,12 +17,11 @@ package nl.knaw.dans.avbag.core;
 
 import org.apache.commons.io.IOUtils;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
@@ -33,88 +32,116 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.ByteArrayInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
-import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.List;
-import java.util.function.Predicate;
 
+/**
+ * XML helpers. Parsers and transformers are created once per thread and reused, as looking up and configuring the JAXP factories costs more than parsing a
+ * typical files.xml. Neither {@link DocumentBuilder} nor {@link Transformer} is thread-safe, hence one per thread rather than one in total.
+ */
 public class XmlUtil {
-    public static Document readXml(Path path) throws ParserConfigurationException, IOException, SAXException {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-        factory.setNamespaceAware(true);
+    private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+    private static final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+    private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<>();
+    private static final ThreadLocal<Transformer> indentingTransformer = new ThreadLocal<>();
+    private static final ThreadLocal<Transformer> plainTransformer = new ThreadLocal<>();
+
+    private static boolean documentBuilderFactoryConfigured = false;
 
-        return factory
-            .newDocumentBuilder()
-            .parse(path.toFile());
+    public static Document readXml(Path path) throws ParserConfigurationException, IOException, SAXException {
+        ConversionEvents.XmlEvent event = new ConversionEvents.XmlEvent();
+        event.begin();
+        Document document = getDocumentBuilder().parse(path.toFile());
+        commit(event, "read", path);
+        return document;
     }
 
     public static Document readXmlFromString(String xml) throws ParserConfigurationException, IOException, SAXException {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-        factory.setNamespaceAware(true);
-
-        return factory
-            .newDocumentBuilder()
+        return getDocumentBuilder()
             .parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
     }
 
-
-    public static Predicate<Element> hasFilePathIn(List<Path> filepaths) {
-        return element -> filepaths.contains(Paths.get(element.getAttribute("filepath")));
-    }
-
-    public static boolean isAccessibleToNone(Node fileElement) {
-        return isNone(fileElement, "accessibleToRights");
-    }
-
-    public static boolean isVisibleToNone(Node fileElement) {
-        return isNone(fileElement, "visibleToRights");
+    private static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = documentBuilder.get();
+        if (builder == null) {
+            // the factories themselves are not thread-safe
+            synchronized (documentBuilderFactory) {
+                if (!documentBuilderFactoryConfigured) {
+                    documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+                    documentBuilderFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                    documentBuilderFactory.setNamespaceAware(true);
+                    documentBuilderFactoryConfigured = true;
+                }
+                builder = documentBuilderFactory.newDocumentBuilder();
+            }
+            documentBuilder.set(builder);
+        }
+        else {
+            builder.reset();
+        }
+        return builder;
     }
 
-    public static boolean isNone(Node fileElement, String tag) {
-        NodeList elements = ((Element) fileElement).getElementsByTagName(tag);
-        if (elements.getLength() == 0)
-            return true;
-        return "NONE".equals(elements.item(0).getTextContent());
+    public static void writeFilesXml(Path bagDir, Document filesXml) throws IOException, TransformerException {
+        ConversionEvents.XmlEvent event = new ConversionEvents.XmlEvent();
+        event.begin();
+        Path file = bagDir.resolve("metadata").resolve("files.xml");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            getTransformer().transform(new DOMSource(filesXml), new StreamResult(out));
+        }
+        catch (TransformerException e) {
+            // do not reuse a transformer that may be left in an inconsistent state
+            indentingTransformer.remove();
+            throw e;
+        }
+        commit(event, "write", file);
     }
 
-    public static void writeFilesXml(Path bagDir, Document filesXml) throws IOException, TransformerException {
-        Writer writer = new FileWriter(bagDir.resolve("metadata").resolve("files.xml").toFile());
-        getTransformer().transform(new DOMSource(filesXml), new StreamResult(writer));
+    private static void commit(ConversionEvents.XmlEvent event, String operation, Path path) {
+        if (event.shouldCommit()) {
+            event.bag = BagReport.currentBagParent();
+            event.operation = operation;
+            event.path = path.toString();
+            event.commit();
+        }
     }
 
     private static Transformer getTransformer() throws TransformerConfigurationException {
-        Transformer transformer = TransformerFactory.newInstance().newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+        Transformer transformer = indentingTransformer.get();
+        if (transformer == null) {
+            transformer = newTransformer();
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+            indentingTransformer.set(transformer);
+        }
         return transformer;
     }
 
+    private static Transformer newTransformer() throws TransformerConfigurationException {
+        synchronized (transformerFactory) {
+            return transformerFactory.newTransformer();
+        }
+    }
+
     public static String serializeNode(Node node) {
         try {
+            Transformer transformer = plainTransformer.get();
+            if (transformer == null) {
+                transformer = newTransformer();
+                plainTransformer.set(transformer);
+            }
             StringWriter sw = new StringWriter();
-            Transformer t = TransformerFactory.newInstance().newTransformer();
-            t.transform(new DOMSource(node), new StreamResult(sw));
+            transformer.transform(new DOMSource(node), new StreamResult(sw));
             return sw.toString();
         }
         catch (Exception e) {
+            plainTransformer.remove();
             return e.getMessage();
         }
     }
 
-    public static void replaceElementTextContent(Document document, String tagName, String newTextContent) {
-        NodeList nodeList = document.getElementsByTagName(tagName);
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Node node = nodeList.item(i);
-            node.setTextContent(newTextContent);
-        }
-    }
 }
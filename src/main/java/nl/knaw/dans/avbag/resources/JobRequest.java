@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.resources;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import java.nio.file.Path;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class JobRequest {
+
+    /**
+     * The directory containing the bag parents.
+     */
+    @NotNull
+    private Path inputDir;
+
+    @NotNull
+    private Path outputDir;
+
+    /**
+     * The name of the bag parent in inputDir to convert, or null to convert all of them.
+     */
+    @Pattern(regexp = "(?!\\.{1,2}$)[^/\\\\]+", message = "must be the name of a directory in inputDir")
+    private String bagParent;
+
+    private boolean keepInput;
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.resources;
+
+import nl.knaw.dans.avbag.core.Job;
+import nl.knaw.dans.avbag.core.JobRunner;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static java.text.MessageFormat.format;
+
+@Path("/jobs")
+@Produces(MediaType.APPLICATION_JSON)
+public class JobsResource {
+    private final JobRunner jobRunner;
+    private final java.nio.file.Path inputRoot;
+    private final java.nio.file.Path outputRoot;
+
+    /**
+     * @param inputRoot  the directory in which the input directories of jobs must be
+     * @param outputRoot the directory in which the output directories of jobs must be
+     */
+    public JobsResource(JobRunner jobRunner, java.nio.file.Path inputRoot, java.nio.file.Path outputRoot) {
+        this.jobRunner = jobRunner;
+        this.inputRoot = inputRoot;
+        this.outputRoot = outputRoot;
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response submit(@NotNull @Valid JobRequest request, @Context UriInfo uriInfo) throws IOException {
+        java.nio.file.Path inputDir = checkDirectory("inputDir", request.getInputDir(), inputRoot);
+        if (request.getBagParent() != null && !isName(request.getBagParent())) {
+            throw new BadRequestException(format("bagParent {0} is not a directory name", request.getBagParent()));
+        }
+        if (request.getBagParent() != null && !Files.isDirectory(inputDir.resolve(request.getBagParent()))) {
+            throw new BadRequestException(format("bagParent {0} is not a directory in {1}", request.getBagParent(), request.getInputDir()));
+        }
+        java.nio.file.Path outputDir = checkDirectory("outputDir", request.getOutputDir(), outputRoot);
+        Job job = jobRunner.submit(inputDir, outputDir, request.getBagParent(), request.isKeepInput());
+        return Response.created(uriInfo.getAbsolutePathBuilder().path(job.getId()).build()).entity(job).build();
+    }
+
+    /**
+     * @return whether the bag parent is one path segment, so that it can not point outside the input directory
+     */
+    private static boolean isName(String bagParent) {
+        try {
+            java.nio.file.Path path = Paths.get(bagParent);
+            return !bagParent.isEmpty() && !path.isAbsolute() && path.getNameCount() == 1 && !".".equals(bagParent) && !"..".equals(bagParent);
+        }
+        catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the real path of the directory
+     * @throws BadRequestException if the directory is relative, does not exist or is not in the root, also after resolving links
+     */
+    private static java.nio.file.Path checkDirectory(String name, java.nio.file.Path dir, java.nio.file.Path root) throws IOException {
+        if (!dir.isAbsolute()) {
+            throw new BadRequestException(format("{0} {1} is not an absolute path", name, dir));
+        }
+        if (!Files.isDirectory(dir)) {
+            throw new BadRequestException(format("{0} {1} is not a directory", name, dir));
+        }
+        java.nio.file.Path realDir = dir.toRealPath();
+        if (!realDir.startsWith(root.toRealPath())) {
+            throw new BadRequestException(format("{0} {1} is not in {2}", name, dir, root));
+        }
+        return realDir;
+    }
+
+    @GET
+    public List<Job> list() {
+        return jobRunner.list();
+    }
+
+    @GET
+    @Path("/{id}")
+    public Job get(@PathParam("id") String id) {
+        return jobRunner.get(id).orElseThrow(() -> new NotFoundException("No such job: " + id));
+    }
+}
@@ -19,10 +19,22 @@ import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.read.ListAppender;
+import nl.knaw.dans.avbag.core.Digests;
+import nl.knaw.dans.avbag.core.ManifestManager;
+import nl.knaw.dans.bagit.creator.CreatePayloadManifestsVistor;
+import nl.knaw.dans.bagit.domain.Bag;
+import nl.knaw.dans.bagit.domain.Manifest;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
@@ -52,4 +64,21 @@ public class TestUtils {
     public static void assumeNotYetFixed(String message) {
         assumeTrue(false, message);
     }
+
+    /**
+     * Recalculates all manifests of a bag, after its payload was changed on disk.
+     */
+    public static void updateManifests(Bag bag) throws IOException, NoSuchAlgorithmException {
+        Map<Manifest, MessageDigest> payloadFilesMap = new HashMap<>();
+        for (Manifest manifest : bag.getPayLoadManifests()) {
+            payloadFilesMap.put(new Manifest(manifest.getAlgorithm()), Digests.create(manifest.getAlgorithm()));
+        }
+        Path dataDir = bag.getRootDir().resolve("data");
+        if (Files.exists(dataDir)) {
+            Files.walkFileTree(dataDir, new CreatePayloadManifestsVistor(payloadFilesMap, true));
+        }
+        bag.getPayLoadManifests().clear();
+        bag.getPayLoadManifests().addAll(payloadFilesMap.keySet());
+        ManifestManager.writeManifests(bag);
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import nl.knaw.dans.bagit.creator.BagCreator;
+import nl.knaw.dans.bagit.domain.Bag;
+import nl.knaw.dans.bagit.domain.Manifest;
+import nl.knaw.dans.bagit.hash.StandardSupportedAlgorithms;
+import nl.knaw.dans.bagit.reader.BagReader;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static nl.knaw.dans.avbag.TestUtils.updateManifests;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BagSessionTest extends AbstractTestWithTestDir {
+
+    private Path createBag(Path bagDir) throws Exception {
+        createDirectories(bagDir);
+        Files.write(bagDir.resolve("some.txt"), "some content".getBytes(UTF_8));
+        Files.write(bagDir.resolve("other.txt"), "other content".getBytes(UTF_8));
+        Bag bag = BagCreator.bagInPlace(bagDir, Collections.singletonList(StandardSupportedAlgorithms.SHA1), false);
+        Path filesXml = bagDir.resolve("metadata/files.xml");
+        createDirectories(filesXml.getParent());
+        Files.write(filesXml, String.join("\n", Arrays.asList(
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<files xmlns='http://easy.dans.knaw.nl/schemas/bag/metadata/files/' xmlns:dct='http://purl.org/dc/terms/'>",
+            "    <file filepath='data/some.txt'/>",
+            "    <file filepath='data/other.txt'/>",
+            "</files>"
+        )).getBytes(UTF_8));
+        updateManifests(bag);
+        return bagDir;
+    }
+
+    @Test
+    public void copy_should_be_independent_and_rebased() throws Exception {
+        BagSession original = BagSession.read(createBag(testDir.resolve("1234/5678")));
+
+        Path copyDir = testDir.resolve("abcd/efgh");
+        BagSession copy = original.copyTo(copyDir);
+        copy.removePayloadFiles(Collections.singletonList(Paths.get("data/some.txt")));
+        copy.getBag().getMetadata().add("Created", "now");
+        copy.getFilesXml().getDocumentElement().removeChild(copy.getFilesXml().getElementsByTagName("file").item(0));
+
+        Manifest originalManifest = original.getBag().getPayLoadManifests().iterator().next();
+        Manifest copiedManifest = copy.getBag().getPayLoadManifests().iterator().next();
+        assertThat(originalManifest.getFileToChecksumMap()).containsOnlyKeys(
+            original.getBagDir().resolve("data/some.txt"),
+            original.getBagDir().resolve("data/other.txt"));
+        assertThat(copiedManifest.getFileToChecksumMap()).containsOnlyKeys(copyDir.resolve("data/other.txt"));
+        assertThat(copy.getBag().getRootDir()).isEqualTo(copyDir);
+        assertThat(original.getBag().getMetadata().get("Created")).isNull();
+        assertThat(original.getFilesXml().getElementsByTagName("file").getLength()).isEqualTo(2);
+    }
+
+    @Test
+    public void write_should_produce_the_same_manifests_as_a_full_recalculation() throws Exception {
+        BagSession input = BagSession.read(createBag(testDir.resolve("1234/5678")));
+        Path bagDir = testDir.resolve("abcd/efgh");
+        FileUtils.copyDirectory(input.getBagDir().toFile(), bagDir.toFile());
+        Path springfieldFile = testDir.resolve("added.mp4");
+        Files.write(springfieldFile, "added content".getBytes(UTF_8));
+
+        BagSession session = input.copyTo(bagDir);
+        new FileRemover(session).removeFiles(element -> element.getAttribute("filepath").equals("data/some.txt"));
+        session.addPayloadFile(springfieldFile, Paths.get("data/added.mp4"), StorageRoot.SPRINGFIELD);
+        session.write();
+
+        Bag written = new BagReader().read(bagDir);
+        Path expectedDir = testDir.resolve("expected/bag");
+        FileUtils.copyDirectory(bagDir.toFile(), expectedDir.toFile());
+        Bag expected = new BagReader().read(expectedDir);
+        updateManifests(expected);
+        assertThat(Files.readAllLines(bagDir.resolve("manifest-sha1.txt")))
+            .containsExactlyInAnyOrderElementsOf(Files.readAllLines(expectedDir.resolve("manifest-sha1.txt")))
+            .hasSize(2);
+        assertThat(Files.readAllLines(bagDir.resolve("tagmanifest-sha1.txt")))
+            .containsExactlyInAnyOrderElementsOf(Files.readAllLines(expectedDir.resolve("tagmanifest-sha1.txt")));
+        assertThat(written.getPayLoadManifests()).hasSize(1);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import nl.knaw.dans.bagit.creator.BagCreator;
+import nl.knaw.dans.bagit.domain.Bag;
+import nl.knaw.dans.bagit.hash.StandardSupportedAlgorithms;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static nl.knaw.dans.avbag.TestUtils.updateManifests;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BagTransferTest extends AbstractTestWithTestDir {
+
+    @Test
+    public void move_by_copy_should_verify_and_remove_source() throws Exception {
+        BagSession bag = createBag();
+        Path source = bag.getBagDir().getParent();
+        Path destination = createDirectories(testDir.resolve("output")).resolve("1234");
+
+        new BagTransfer(2).moveByCopy(bag, destination);
+
+        assertThat(source).doesNotExist();
+        assertThat(destination.resolve("5678/data/some.txt")).hasContent("some content");
+        assertThat(destination.resolve("5678/tagmanifest-sha1.txt")).exists();
+        try (Stream<Path> list = Files.list(destination.getParent())) {
+            assertThat(list.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void move_by_copy_should_keep_source_when_checksum_differs() throws Exception {
+        BagSession bag = createBag();
+        Path source = bag.getBagDir().getParent();
+        Files.write(source.resolve("5678/data/some.txt"), "tampered".getBytes(UTF_8));
+        Path destination = createDirectories(testDir.resolve("output")).resolve("1234");
+
+        assertThatThrownBy(() -> new BagTransfer(2).moveByCopy(bag, destination))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("some.txt")
+            .hasMessageEndingWith("according to the manifest");
+
+        assertThat(source.resolve("5678/data/some.txt")).hasContent("tampered");
+        assertThat(testDir.resolve("output")).isEmptyDirectory();
+    }
+
+    @Test
+    public void move_should_rename_on_the_same_file_system() throws Exception {
+        BagSession bag = createBag();
+        Path source = bag.getBagDir().getParent();
+        Path destination = createDirectories(testDir.resolve("output")).resolve("1234");
+
+        new BagTransfer(1).move(bag, destination);
+
+        assertThat(source).doesNotExist();
+        assertThat(destination.resolve("5678/data/some.txt")).hasContent("some content");
+    }
+
+    @Test
+    public void assemble_should_replace_links_by_files() throws Exception {
+        BagSession bag = createBag();
+        Path source = bag.getBagDir().getParent();
+        Path payloadFile = source.resolve("5678/data/some.txt");
+        Path original = testDir.resolve("input/some.txt");
+        createDirectories(original.getParent());
+        Files.move(payloadFile, original);
+        Files.createSymbolicLink(payloadFile, original);
+        Path destination = createDirectories(testDir.resolve("output")).resolve("1234");
+
+        new BagTransfer(2).assemble(bag, destination);
+
+        assertThat(source).doesNotExist();
+        Path assembled = destination.resolve("5678/data/some.txt");
+        assertThat(Files.isSymbolicLink(assembled)).isFalse();
+        assertThat(assembled).hasContent("some content");
+        // the same file system, so a hard link rather than a copy
+        assertThat(Files.isSameFile(assembled, original)).isTrue();
+    }
+
+    private BagSession createBag() throws Exception {
+        Path bagDir = createDirectories(testDir.resolve("staging/1234/5678"));
+        Files.write(bagDir.resolve("some.txt"), "some content".getBytes(UTF_8));
+        Bag bag = BagCreator.bagInPlace(bagDir, Collections.singletonList(StandardSupportedAlgorithms.SHA1), false);
+        Files.write(createDirectories(bagDir.resolve("metadata")).resolve("files.xml"), "<files/>".getBytes(UTF_8));
+        updateManifests(bag);
+        return BagSession.read(bagDir);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import nl.knaw.dans.avbag.core.BagReport.Stage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConversionEventsTest extends AbstractTestWithTestDir {
+
+    @Test
+    public void recording_should_contain_stage_and_xml_events_of_the_bag() throws Exception {
+        createDirectories(testDir);
+        Path xml = testDir.resolve("files.xml");
+        Files.write(xml, "<files/>".getBytes(UTF_8));
+        Path jfr = testDir.resolve("recording.jfr");
+
+        Recording recording = ConversionEvents.startRecording(jfr);
+        BagReport report = new BagReport("some-bag-parent").start();
+        try (BagReport.Timer ignored = report.time(Stage.READ)) {
+            XmlUtil.readXml(xml);
+        }
+        finally {
+            report.end();
+            recording.stop();
+            recording.close();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+        assertThat(events)
+            .filteredOn(event -> event.getEventType().getName().equals("nl.knaw.dans.avbag.Stage"))
+            .hasSize(1)
+            .first()
+            .satisfies(event -> {
+                assertThat(event.getString("bag")).isEqualTo("some-bag-parent");
+                assertThat(event.getString("stage")).isEqualTo("READ");
+            });
+        assertThat(events)
+            .filteredOn(event -> event.getEventType().getName().equals("nl.knaw.dans.avbag.Xml"))
+            .hasSize(1)
+            .first()
+            .satisfies(event -> {
+                assertThat(event.getString("bag")).isEqualTo("some-bag-parent");
+                assertThat(event.getString("operation")).isEqualTo("read");
+                assertThat(event.getString("path")).isEqualTo(xml.toString());
+            });
+    }
+}
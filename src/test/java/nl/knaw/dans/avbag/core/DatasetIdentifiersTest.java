@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DatasetIdentifiersTest extends AbstractTestWithTestDir {
+
+    private Path writeDatasetXml(String... dcmiMetadata) throws Exception {
+        createDirectories(testDir);
+        Path datasetXml = testDir.resolve("dataset.xml");
+        StringBuilder xml = new StringBuilder(String.join("\n", Arrays.asList(
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<ddm:DDM xmlns:ddm='http://easy.dans.knaw.nl/schemas/md/ddm/'",
+            "         xmlns:dct='http://purl.org/dc/terms/'",
+            "         xmlns:id-type='http://easy.dans.knaw.nl/schemas/vocab/identifier-type/'",
+            "         xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'>",
+            "  <ddm:profile>",
+            "    <dct:identifier xsi:type='id-type:DOI'>10.17026/not-in-dcmi-metadata</dct:identifier>",
+            "  </ddm:profile>",
+            "  <ddm:dcmiMetadata>"
+        )));
+        for (String line : dcmiMetadata) {
+            xml.append("\n    ").append(line);
+        }
+        xml.append("\n  </ddm:dcmiMetadata>\n</ddm:DDM>\n");
+        Files.write(datasetXml, xml.toString().getBytes(UTF_8));
+        return datasetXml;
+    }
+
+    @Test
+    public void should_find_doi_and_urn_in_dcmi_metadata() throws Exception {
+        Path datasetXml = writeDatasetXml(
+            "<dct:identifier xsi:type='id-type:EASY2'>easy-dataset:155170</dct:identifier>",
+            "<dct:identifier xsi:type='id-type:URN'>urn:nbn:nl:ui:13-8359-zx</dct:identifier>",
+            "<dct:identifier xsi:type='id-type:DOI'>10.17026/dans-z4w-9rz7</dct:identifier>",
+            "<dct:identifier xsi:type='id-type:DOI'>10.17026/ignored</dct:identifier>"
+        );
+
+        assertThat(DatasetIdentifiers.read(datasetXml))
+            .isEqualTo(new DatasetIdentifiers("10.17026/dans-z4w-9rz7", "urn:nbn:nl:ui:13-8359-zx"));
+    }
+
+    @Test
+    public void should_return_null_for_missing_identifiers() throws Exception {
+        Path datasetXml = writeDatasetXml(
+            "<dct:identifier xsi:type='id-type:URN'>urn:nbn:nl:ui:13-8359-zx</dct:identifier>",
+            "<dct:identifier>no type</dct:identifier>"
+        );
+
+        assertThat(DatasetIdentifiers.read(datasetXml))
+            .isEqualTo(new DatasetIdentifiers(null, "urn:nbn:nl:ui:13-8359-zx"));
+    }
+}
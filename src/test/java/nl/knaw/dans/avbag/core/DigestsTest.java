@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.bagit.hash.StandardSupportedAlgorithms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DigestsTest {
+
+    @AfterEach
+    public void resetProviders() throws Exception {
+        Digests.configure(Collections.emptyMap());
+    }
+
+    @Test
+    public void algorithm_should_accept_manifest_names() {
+        assertThat(Digests.algorithm("sha256")).isEqualTo(StandardSupportedAlgorithms.SHA256);
+        assertThat(Digests.algorithm(" SHA1 ")).isEqualTo(StandardSupportedAlgorithms.SHA1);
+    }
+
+    @Test
+    public void algorithm_should_reject_unknown_names() {
+        assertThatThrownBy(() -> Digests.algorithm("sha-256"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("Unsupported manifest algorithm sha-256");
+    }
+
+    @Test
+    public void create_should_use_the_configured_provider() throws Exception {
+        Digests.configure(Collections.singletonMap("sha1", "SUN"));
+
+        assertThat(Digests.create(StandardSupportedAlgorithms.SHA1).getProvider().getName()).isEqualTo("SUN");
+    }
+
+    @Test
+    public void configure_should_reject_unknown_providers() {
+        assertThatThrownBy(() -> Digests.configure(Collections.singletonMap("sha1", "NoSuchProvider")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("Unknown security provider NoSuchProvider");
+    }
+
+    @Test
+    public void benchmark_should_put_the_fastest_first() throws Exception {
+        List<DigestBenchmark.Result> results = DigestBenchmark.run(StandardSupportedAlgorithms.SHA256, 4);
+
+        assertThat(results).isNotEmpty();
+        assertThat(results.get(0).getMegabytesPerSecond()).isGreaterThanOrEqualTo(results.get(results.size() - 1).getMegabytesPerSecond());
+    }
+}
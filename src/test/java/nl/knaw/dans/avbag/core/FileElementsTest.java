@@ -16,9 +16,13 @@
 package nl.knaw.dans.avbag.core;
 
 import nl.knaw.dans.avbag.core.FileElements.FileElement;
+import nl.knaw.dans.avbag.core.FileElements.Rights;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -46,8 +50,8 @@ public class FileElementsTest {
         assertThat(fileElements).hasSize(1);
         assertThat(fileElements.get(0).getFileId()).isEqualTo("easy-file:123");
         assertThat(fileElements.get(0).getFilePath()).isEqualTo("path/to/file");
-        assertThat(fileElements.get(0).getAccessibleToRights()).isEqualTo("ANONYMOUS");
-        assertThat(fileElements.get(0).getVisibleToRights()).isEqualTo("NONE");
+        assertThat(fileElements.get(0).getAccessibleToRights()).isEqualTo(Rights.ANONYMOUS);
+        assertThat(fileElements.get(0).getVisibleToRights()).isEqualTo(Rights.NONE);
     }
 
 
@@ -75,12 +79,12 @@ public class FileElementsTest {
         assertThat(fileElements).hasSize(2);
         assertThat(fileElements.get(0).getFileId()).isEqualTo("easy-file:456");
         assertThat(fileElements.get(0).getFilePath()).isEqualTo("path/to/file");
-        assertThat(fileElements.get(0).getAccessibleToRights()).isEqualTo("ANONYMOUS");
-        assertThat(fileElements.get(0).getVisibleToRights()).isEqualTo("NONE");
+        assertThat(fileElements.get(0).getAccessibleToRights()).isEqualTo(Rights.ANONYMOUS);
+        assertThat(fileElements.get(0).getVisibleToRights()).isEqualTo(Rights.NONE);
         assertThat(fileElements.get(1).getFileId()).isEqualTo("easy-file:789");
         assertThat(fileElements.get(1).getFilePath()).isEqualTo("path/to/file2");
-        assertThat(fileElements.get(1).getAccessibleToRights()).isEqualTo("KNOWN");
-        assertThat(fileElements.get(1).getVisibleToRights()).isEqualTo("KNOWN");
+        assertThat(fileElements.get(1).getAccessibleToRights()).isEqualTo(Rights.KNOWN);
+        assertThat(fileElements.get(1).getVisibleToRights()).isEqualTo(Rights.KNOWN);
     }
 
     @Test
@@ -131,4 +135,81 @@ public class FileElementsTest {
         assertThatThrownBy(() -> FileElements.read(filesXml)).isInstanceOf(IllegalArgumentException.class)
             .hasMessage("visibleToRights is required on every file element");
     }
+
+    @Test
+    public void should_index_by_file_id_and_normalized_file_path() throws Exception {
+        // Given
+        String xml = "<files xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\" "
+            + "              xmlns:dct=\"http://purl.org/dc/terms/\">"
+            + "<file filepath=\"data/placeholder.mp4\">"
+            + "   <dct:identifier>easy-file:456</dct:identifier>"
+            + "   <accessibleToRights>RESTRICTED_REQUEST</accessibleToRights>"
+            + "   <visibleToRights>ANONYMOUS</visibleToRights></file>"
+            + "<file filepath=\"data/dark.mp4\">"
+            + "   <dct:identifier>easy-file:789</dct:identifier>"
+            + "   <accessibleToRights>NONE</accessibleToRights>"
+            + "   <visibleToRights>NONE</visibleToRights>"
+            + "</file>"
+            + "</files>";
+        Document filesXml = XmlUtil.readXmlFromString(xml);
+
+        // When
+        FileElements fileElements = FileElements.index(filesXml, Collections.singleton(Paths.get("data/placeholder.mp4")), Arrays.asList("easy-file:456", "easy-file:123"), false);
+
+        // Then
+        FileElement placeHolder = fileElements.getByFileId("easy-file:456");
+        assertThat(fileElements.getByFilePath("data/./placeholder.mp4")).isSameAs(placeHolder);
+        assertThat(placeHolder.isPlaceHolder()).isTrue();
+        assertThat(placeHolder.isSpringfieldBacked()).isTrue();
+        assertThat(placeHolder.isNoneNone()).isFalse();
+        FileElement dark = fileElements.getByFilePath("data/dark.mp4");
+        assertThat(dark.isPlaceHolder()).isFalse();
+        assertThat(dark.isSpringfieldBacked()).isFalse();
+        assertThat(dark.isNoneNone()).isTrue();
+        assertThat(fileElements.isAllNoneNone()).isFalse();
+        assertThat(fileElements.getByFileId("easy-file:123")).isNull();
+    }
+
+    @Test
+    public void index_should_treat_missing_rights_as_none() throws Exception {
+        // Given
+        String xml = "<files xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\" "
+            + "              xmlns:dct=\"http://purl.org/dc/terms/\">"
+            + "<file filepath=\"data/no-rights.txt\">"
+            + "   <dct:identifier>easy-file:123</dct:identifier>"
+            + "</file>"
+            + "<file filepath=\"data/visible.txt\">"
+            + "   <dct:identifier>easy-file:456</dct:identifier>"
+            + "   <visibleToRights>ANONYMOUS</visibleToRights>"
+            + "</file>"
+            + "</files>";
+        Document filesXml = XmlUtil.readXmlFromString(xml);
+
+        // When
+        FileElements fileElements = FileElements.index(filesXml, Collections.emptySet(), Collections.emptySet(), true);
+
+        // Then
+        assertThat(fileElements.getByFilePath("data/no-rights.txt").isNoneNone()).isTrue();
+        FileElement visible = fileElements.getByFilePath("data/visible.txt");
+        assertThat(visible.getAccessibleToRights()).isEqualTo(Rights.NONE);
+        assertThat(visible.isNoneNone()).isFalse();
+    }
+
+    @Test
+    public void should_throw_exception_on_unknown_rights() throws Exception {
+        // Given
+        String xml = "<files xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\" "
+            + "              xmlns:dct=\"http://purl.org/dc/terms/\">"
+            + "<file filepath=\"path/to/file\">"
+            + "   <dct:identifier>easy-file:123</dct:identifier>"
+            + "   <accessibleToRights>EVERYONE</accessibleToRights>"
+            + "   <visibleToRights>NONE</visibleToRights>"
+            + "</file>"
+            + "</files>";
+        Document filesXml = XmlUtil.readXmlFromString(xml);
+
+        // When
+        assertThatThrownBy(() -> FileElements.read(filesXml)).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Unknown accessibleToRights on file element: EVERYONE");
+    }
 }
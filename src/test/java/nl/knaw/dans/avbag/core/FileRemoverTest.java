@@ -33,7 +33,7 @@ import java.util.Collections;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.createDirectories;
-import static nl.knaw.dans.avbag.core.ManifestManager.updateManifests;
+import static nl.knaw.dans.avbag.TestUtils.updateManifests;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -63,7 +63,7 @@ public class FileRemoverTest extends AbstractTestWithTestDir {
         updateManifests(bag);
 
         // When / Then
-        FileRemover remover = new FileRemover(bagDir);
+        FileRemover remover = new FileRemover(BagSession.read(bagDir));
         assertThatThrownBy(() -> remover
             .removeFiles(element -> true)
         ).isInstanceOf(IOException.class)
@@ -113,8 +113,8 @@ public class FileRemoverTest extends AbstractTestWithTestDir {
         updateManifests(bag);
 
         // When
-        FileRemover remover = new FileRemover(bagDir);
-        assertThat(remover.removeFiles(new NoneNoneAndPlaceHolderFilter(new PlaceHolders(bagDir))))
+        FileRemover remover = new FileRemover(BagSession.read(bagDir));
+        assertThat(remover.removeFiles(noneNoneAndPlaceHolderFilter(bagDir)))
             // Then
             .containsExactlyInAnyOrderElementsOf(Arrays.asList(
                 Paths.get("data/some.txt"),
@@ -143,10 +143,15 @@ public class FileRemoverTest extends AbstractTestWithTestDir {
         updateManifests(bag);
 
         // When
-        FileRemover remover = new FileRemover(bagDir);
+        FileRemover remover = new FileRemover(BagSession.read(bagDir));
 
         // Then
-        assertThat(remover.removeFiles(new NoneNoneAndPlaceHolderFilter(new PlaceHolders(bagDir))))
+        assertThat(remover.removeFiles(noneNoneAndPlaceHolderFilter(bagDir)))
             .isEmpty();
     }
+
+    private static NoneNoneAndPlaceHolderFilter noneNoneAndPlaceHolderFilter(Path bagDir) throws Exception {
+        PlaceHolders placeHolders = new PlaceHolders(bagDir);
+        return new NoneNoneAndPlaceHolderFilter(FileElements.index(XmlUtil.readXml(bagDir.resolve("metadata/files.xml")), placeHolders.getFilePaths(), Collections.emptySet(), true));
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FsyncTest extends AbstractTestWithTestDir {
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @AfterEach
+    public void resetDurability() {
+        Fsync.configure(Durability.NONE);
+    }
+
+    @Test
+    public void per_bag_should_sync_the_tree_but_not_single_files() throws Exception {
+        Path bagDir = createBag();
+        Fsync.registerMetrics(registry);
+        Timer bag = registry.timer("avbag.fsync.bag");
+        Timer file = registry.timer("avbag.fsync.file");
+        long bagSyncs = bag.getCount();
+        long fileSyncs = file.getCount();
+
+        Fsync.configure(Durability.PER_BAG);
+        Fsync.syncTree(bagDir.getParent(), 2);
+        Fsync.syncWritten(bagDir.resolve("data/some.txt"));
+
+        assertThat(bag.getCount()).isEqualTo(bagSyncs + 1);
+        assertThat(file.getCount()).isEqualTo(fileSyncs);
+    }
+
+    @Test
+    public void strict_should_sync_single_files() throws Exception {
+        Path bagDir = createBag();
+        Fsync.registerMetrics(registry);
+        Timer file = registry.timer("avbag.fsync.file");
+        long fileSyncs = file.getCount();
+
+        Fsync.configure(Durability.STRICT);
+        Fsync.syncWritten(bagDir.resolve("data/some.txt"));
+
+        assertThat(file.getCount()).isEqualTo(fileSyncs + 1);
+    }
+
+    @Test
+    public void should_sync_read_only_files() throws Exception {
+        Path bagDir = createBag();
+        Path readOnly = bagDir.resolve("data/some.txt");
+        assertThat(readOnly.toFile().setWritable(false, false)).isTrue();
+        Fsync.registerMetrics(registry);
+        Timer bag = registry.timer("avbag.fsync.bag");
+        long bagSyncs = bag.getCount();
+
+        Fsync.configure(Durability.STRICT);
+        Fsync.syncWritten(readOnly);
+        Fsync.syncTree(bagDir.getParent(), 2);
+
+        assertThat(bag.getCount()).isEqualTo(bagSyncs + 1);
+    }
+
+    @Test
+    public void none_should_not_sync() throws Exception {
+        Path bagDir = createBag();
+        Fsync.registerMetrics(registry);
+        Timer bag = registry.timer("avbag.fsync.bag");
+        long bagSyncs = bag.getCount();
+
+        Fsync.syncTree(bagDir.getParent(), 2);
+        Fsync.syncDirectory(bagDir);
+
+        assertThat(bag.getCount()).isEqualTo(bagSyncs);
+    }
+
+    private Path createBag() throws Exception {
+        Path bagDir = createDirectories(testDir.resolve("staging/1234/5678"));
+        createDirectories(bagDir.resolve("data"));
+        Files.write(bagDir.resolve("data/some.txt"), "some content".getBytes(UTF_8));
+        Files.write(bagDir.resolve("bagit.txt"), "BagIt-Version: 0.97".getBytes(UTF_8));
+        return bagDir;
+    }
+}
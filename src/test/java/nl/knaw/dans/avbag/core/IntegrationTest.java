@@ -28,6 +28,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -36,8 +37,10 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -171,6 +174,20 @@ public class IntegrationTest extends AbstractTestWithTestDir {
         assertThat(stdout.toString()).contains(String.format("processed=%d, failed=0, created=%d", numberOfInputBags, numberOfOutputBags));
     }
 
+    @Test
+    public void should_not_modify_input_when_keeping_it() throws Exception {
+        FileUtils.copyDirectory(inputBags.toFile(), mutableInput.toFile());
+
+        new AVConverter(mutableInput, convertedBags, stagedBags, getPseudoFileSources(), true).convertAll();
+
+        assertThat(stdout.toString()).contains("processed=5, failed=0, created=10");
+        try (Stream<Path> files = Files.walk(inputBags)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                assertThat(mutableInput.resolve(inputBags.relativize(file))).hasSameBinaryContentAs(file);
+            }
+        }
+    }
+
     @Test
     public void should_not_create_springfield_bags_if_no_path_in_springfield_dir_present() throws Exception {
         FileUtils.copyDirectory(inputBags.toFile(), mutableInput.toFile());
@@ -192,6 +209,161 @@ public class IntegrationTest extends AbstractTestWithTestDir {
         assertThat(stdout.toString()).contains("processed=5, failed=0, created=10");
     }
 
+    @Test
+    public void should_convert_each_bag_once_with_two_shards() throws Exception {
+        FileUtils.copyDirectory(inputBags.toFile(), mutableInput.toFile());
+
+        for (int i = 0; i < 2; i++) {
+            AVConverter avConverter = new AVConverter(mutableInput, convertedBags, stagedBags, getPseudoFileSources());
+            avConverter.setShard(new Shard(i, 2));
+            avConverter.convertAll();
+        }
+
+        assertThat(mutableInput).isEmptyDirectory();
+        try (Stream<Path> converted = Files.list(convertedBags)) {
+            assertThat(converted.count()).isEqualTo(10);
+        }
+    }
+
+    @Test
+    public void should_skip_locked_bag_parent() throws Exception {
+        FileUtils.copyDirectory(inputBags.toFile(), mutableInput.toFile());
+        String uuid = "7bf09491-54b4-436e-7f59-1027f54cbb0c";
+        Files.write(mutableInput.resolve(uuid + ".lock"), "12345@other-host".getBytes(UTF_8));
+
+        AVConverter avConverter = new AVConverter(mutableInput, convertedBags, stagedBags, getPseudoFileSources());
+        avConverter.setShard(Shard.ALL);
+        avConverter.convertAll();
+
+        assertThat(mutableInput.resolve(uuid)).isDirectory();
+        assertThat(mutableInput.resolve(uuid + ".lock")).exists();
+        assertThat(stdout.toString()).contains("processed=4, failed=0, created=8, skipped=1");
+    }
+
+    @Test
+    public void should_skip_bag_parent_converted_by_another_process_with_keep_input() throws Exception {
+        FileUtils.copyDirectory(inputBags.toFile(), mutableInput.toFile());
+
+        for (int i = 0; i < 2; i++) {
+            AVConverter avConverter = new AVConverter(mutableInput, convertedBags, stagedBags, getPseudoFileSources(), true);
+            avConverter.setShard(Shard.ALL);
+            avConverter.convertAll();
+        }
+
+        assertThat(stdout.toString())
+            .contains("processed=5, failed=0, created=10, skipped=0")
+            .contains("processed=0, failed=0, created=0, skipped=5");
+        try (Stream<Path> lockFiles = Files.list(mutableInput)) {
+            assertThat(lockFiles).noneMatch(path -> path.toString().endsWith(".lock"));
+        }
+    }
+
+    @Test
+    public void should_convert_bag_parents_in_parallel() throws Exception {
+        FileUtils.copyDirectory(inputBags.toFile(), mutableInput.toFile());
+
+        AVConverter avConverter = new AVConverter(mutableInput, convertedBags, stagedBags, getPseudoFileSources());
+        avConverter.setParallelism(3);
+        avConverter.setSchedulingPolicy(SchedulingPolicy.LARGEST_FIRST);
+        avConverter.convertAll();
+
+        assertThat(mutableInput).isEmptyDirectory();
+        assertThat(stagedBags).isEmptyDirectory();
+        assertThat(stdout.toString()).contains("processed=5, failed=0, created=10");
+    }
+
+    @Test
+    public void should_link_the_payload_when_staging() throws Exception {
+        FileUtils.copyDirectory(inputBags.toFile(), mutableInput.toFile());
+
+        AVConverter avConverter = new AVConverter(mutableInput, convertedBags, stagedBags, getPseudoFileSources());
+        avConverter.setPayloadStaging(PayloadStaging.LINK);
+        avConverter.convertAll();
+
+        assertThat(mutableInput).isEmptyDirectory();
+        assertThat(stagedBags).isEmptyDirectory();
+        assertThat(stdout.toString()).contains("processed=5, failed=0, created=10");
+        try (Stream<Path> files = Files.walk(convertedBags)) {
+            assertThat(files).noneMatch(Files::isSymbolicLink);
+        }
+    }
+
+    @Test
+    public void should_deduplicate_springfield_files() throws Exception {
+        FileUtils.copyDirectory(inputBags.toFile(), mutableInput.toFile());
+
+        AVConverter avConverter = new AVConverter(mutableInput, convertedBags, stagedBags, getPseudoFileSources());
+        avConverter.setDeduplicateSpringfieldFiles(true);
+        avConverter.convertAll();
+
+        assertThat(stagedBags).isEmptyDirectory();
+        assertThat(stdout.toString()).contains("processed=5, failed=0, created=10");
+        List<Path> manifests;
+        try (Stream<Path> files = Files.walk(convertedBags)) {
+            manifests = files.filter(path -> path.getFileName().toString().equals("manifest-sha1.txt")).collect(Collectors.toList());
+        }
+        for (Path manifest : manifests) {
+            for (String line : readAllLines(manifest)) {
+                String[] checksumAndPath = line.split(" +", 2);
+                MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+                String actual = Digests.hex(sha1.digest(Files.readAllBytes(manifest.getParent().resolve(checksumAndPath[1]))));
+                assertThat(actual).as(checksumAndPath[1]).isEqualTo(checksumAndPath[0]);
+            }
+        }
+    }
+
+    @Test
+    public void should_add_extra_manifests() throws Exception {
+        FileUtils.copyDirectory(inputBags.toFile(), mutableInput.toFile());
+
+        AVConverter avConverter = new AVConverter(mutableInput, convertedBags, stagedBags, getPseudoFileSources());
+        avConverter.setExtraManifestAlgorithms(Digests.algorithms(Collections.singletonList("sha256")));
+        avConverter.convertAll();
+
+        assertThat(stdout.toString()).contains("processed=5, failed=0, created=10");
+        List<Path> manifests;
+        try (Stream<Path> files = Files.walk(convertedBags)) {
+            manifests = files.filter(path -> path.getFileName().toString().equals("manifest-sha256.txt")).collect(Collectors.toList());
+        }
+        assertThat(manifests).hasSize(10);
+        for (Path manifest : manifests) {
+            Path bagDir = manifest.getParent();
+            assertThat(bagDir.resolve("tagmanifest-sha256.txt")).exists();
+            List<String> lines = readAllLines(manifest);
+            assertThat(lines).hasSameSizeAs(readAllLines(bagDir.resolve("manifest-sha1.txt")));
+            for (String line : lines) {
+                String[] checksumAndPath = line.split(" +", 2);
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                String actual = Digests.hex(sha256.digest(Files.readAllBytes(bagDir.resolve(checksumAndPath[1]))));
+                assertThat(actual).as(checksumAndPath[1]).isEqualTo(checksumAndPath[0]);
+            }
+        }
+    }
+
+    @Test
+    public void should_write_a_report_per_bag_parent() throws Exception {
+        FileUtils.copyDirectory(inputBags.toFile(), mutableInput.toFile());
+        Path reports = testDir.resolve("reports");
+
+        AVConverter avConverter = new AVConverter(mutableInput, convertedBags, stagedBags, getPseudoFileSources());
+        avConverter.setReportDir(reports);
+        avConverter.convertAll();
+
+        try (Stream<Path> files = Files.list(reports)) {
+            assertThat(files.map(path -> path.getFileName().toString()))
+                .hasSize(2)
+                .allMatch(name -> name.matches("conversion-report-\\d{8}T\\d{6}\\.(csv|json)"));
+        }
+        try (Stream<Path> files = Files.list(reports)) {
+            Path csv = files.filter(path -> path.toString().endsWith(".csv")).findFirst().orElseThrow(IllegalStateException::new);
+            List<String> lines = readAllLines(csv);
+            assertThat(lines.get(0)).startsWith("bag_parent,status,attempts,revision1,revision2,files");
+            assertThat(lines.subList(1, lines.size()))
+                .hasSize(5)
+                .allMatch(line -> line.contains(",CONVERTED,"));
+        }
+    }
+
     @Test
     public void should_fail_when_all_files_are_none_none() throws Exception {
         String bagParent = "7bf09491-54b4-436e-7f59-1027f54cbb0c";
@@ -205,16 +377,25 @@ public class IntegrationTest extends AbstractTestWithTestDir {
         Path filesXmlFile = bagDir.resolve("metadata/files.xml");
 
         Document filesXml = XmlUtil.readXml(filesXmlFile);
-        XmlUtil.replaceElementTextContent(filesXml, "accessibleToRights", "NONE");
-        XmlUtil.replaceElementTextContent(filesXml, "visibleToRights", "NONE");
+        replaceElementTextContent(filesXml, "accessibleToRights", "NONE");
+        replaceElementTextContent(filesXml, "visibleToRights", "NONE");
         XmlUtil.writeFilesXml(bagDir, filesXml);
 
         new AVConverter(mutableInput, convertedBags, stagedBags, getPseudoFileSources()).convertAll();
 
         assertThat(loggedEvents.list)
-            .anyMatch(event -> event.getFormattedMessage().contains(String.format("%s failed, it may or may not have (incomplete) bags in %s/staged-bags", bagParent, testDir.toAbsolutePath())));
+            .anyMatch(event -> event.getFormattedMessage().contains(String.format("%s failed, its partial output is removed", bagParent)));
 
         assertThat(stdout.toString()).contains("processed=0, failed=1, created=0");
+        assertThat(stagedBags).isEmptyDirectory();
+        assertThat(mutableInput.resolve(bagParent)).exists();
+    }
+
+    private static void replaceElementTextContent(Document document, String tagName, String newTextContent) {
+        NodeList nodeList = document.getElementsByTagName(tagName);
+        for (int i = 0; i < nodeList.getLength(); i++) {
+            nodeList.item(i).setTextContent(newTextContent);
+        }
     }
 
     private PseudoFileSources getPseudoFileSources() throws IOException {
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import nl.knaw.dans.avbag.core.Job.Status;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class JobQueueTest extends AbstractTestWithTestDir {
+
+    @Test
+    public void submitted_jobs_should_survive_a_restart() throws Exception {
+        JobQueue queue = new JobQueue(testDir);
+        Job first = queue.submit(Paths.get("/inbox"), Paths.get("/outbox"), null, false);
+        Job second = queue.submit(Paths.get("/inbox"), Paths.get("/outbox"), "some-bag-parent", true);
+
+        assertThat(new JobQueue(testDir).list())
+            .extracting(Job::getId, Job::getBagParent, Job::isKeepInput, Job::getStatus)
+            .containsExactly(
+                tuple(first.getId(), null, false, Status.QUEUED),
+                tuple(second.getId(), "some-bag-parent", true, Status.QUEUED));
+    }
+
+    @Test
+    public void running_job_should_be_failed_after_a_restart() throws Exception {
+        JobQueue queue = new JobQueue(testDir);
+        Job job = queue.submit(Paths.get("/inbox"), Paths.get("/outbox"), null, false);
+        queue.update(job.getId(), running -> running.setStatus(Status.RUNNING));
+
+        Job restarted = new JobQueue(testDir).get(job.getId()).orElseThrow(IllegalStateException::new);
+
+        assertThat(restarted.getStatus()).isEqualTo(Status.FAILED);
+        assertThat(restarted.getMessage()).startsWith("Interrupted by a restart");
+        assertThat(restarted.getFinishedAt()).isNotNull();
+    }
+
+    @Test
+    public void get_should_return_a_copy() throws Exception {
+        JobQueue queue = new JobQueue(testDir);
+        Job job = queue.submit(Paths.get("/inbox"), Paths.get("/outbox"), null, false);
+
+        queue.get(job.getId()).orElseThrow(IllegalStateException::new).setStatus(Status.DONE);
+
+        assertThat(queue.get(job.getId()).map(Job::getStatus)).contains(Status.QUEUED);
+        assertThat(queue.count(Status.QUEUED)).isEqualTo(1);
+    }
+
+    @Test
+    public void report_dir_should_be_in_the_queue_dir() throws Exception {
+        Job job = new JobQueue(testDir).submit(Paths.get("/inbox"), Paths.get("/outbox"), null, false);
+
+        assertThat(job.getReportDir()).isEqualTo(testDir.toAbsolutePath().resolve(job.getId()));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import nl.knaw.dans.avbag.config.PseudoFileSourcesConfig;
+import nl.knaw.dans.avbag.core.Job.Status;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static java.nio.file.Files.createDirectories;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JobRunnerTest extends AbstractTestWithTestDir {
+    private final Path integration = Paths.get("src/test/resources/integration");
+    private final Path inputDir = testDir.resolve("input-bags");
+    private final Path outputDir = testDir.resolve("converted-bags");
+    private final Path stagingDir = testDir.resolve("staged-bags");
+    private JobRunner jobRunner;
+
+    @BeforeEach
+    public void start() throws Exception {
+        super.setUp();
+        FileUtils.copyDirectory(integration.resolve("input-bags").toFile(), inputDir.toFile());
+        createDirectories(outputDir);
+        createDirectories(stagingDir);
+        PseudoFileSources pseudoFileSources = new PseudoFileSources(new PseudoFileSourcesConfig(
+            integration.resolve("darkarchive"),
+            integration.resolve("springfield"),
+            integration.resolve("sources.csv")
+        ));
+        jobRunner = new JobRunner(new JobQueue(testDir.resolve("jobs")), stagingDir, pseudoFileSources, 2, 1);
+        jobRunner.start();
+    }
+
+    @AfterEach
+    public void stop() throws Exception {
+        jobRunner.stop();
+    }
+
+    @Test
+    public void jobs_should_convert_one_bag_parent_or_the_rest() throws Exception {
+        String bagParent = "7bf09491-54b4-436e-7f59-1027f54cbb0c";
+
+        Job single = awaitFinished(jobRunner.submit(inputDir, outputDir, bagParent, false));
+        Job rest = awaitFinished(jobRunner.submit(inputDir, outputDir, null, false));
+
+        assertThat(single.getStatus()).isEqualTo(Status.DONE);
+        assertThat(single.getProcessedBags()).isEqualTo(1);
+        assertThat(single.getCreatedBags()).isEqualTo(2);
+        assertThat(rest.getStatus()).isEqualTo(Status.DONE);
+        assertThat(rest.getProcessedBags()).isEqualTo(4);
+        assertThat(inputDir).isEmptyDirectory();
+        assertThat(stagingDir).isEmptyDirectory();
+        try (Stream<Path> reports = Files.list(single.getReportDir())) {
+            assertThat(reports).hasSize(2);
+        }
+    }
+
+    @Test
+    public void job_should_fail_when_output_dir_is_missing() throws Exception {
+        Job job = awaitFinished(jobRunner.submit(inputDir, testDir.resolve("missing"), null, true));
+
+        assertThat(job.getStatus()).isEqualTo(Status.FAILED);
+        assertThat(job.getMessage()).isNotBlank();
+    }
+
+    private Job awaitFinished(Job submitted) throws InterruptedException {
+        for (int i = 0; i < 600; i++) {
+            Job job = jobRunner.get(submitted.getId()).orElseThrow(IllegalStateException::new);
+            if (job.getStatus() == Status.DONE || job.getStatus() == Status.FAILED) {
+                return job;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Job " + submitted.getId() + " did not finish");
+    }
+}
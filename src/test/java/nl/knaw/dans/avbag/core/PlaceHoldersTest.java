@@ -20,12 +20,15 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.read.ListAppender;
 import nl.knaw.dans.avbag.AbstractTestWithTestDir;
 import nl.knaw.dans.avbag.config.PseudoFileSourcesConfig;
+import nl.knaw.dans.bagit.creator.BagCreator;
+import nl.knaw.dans.bagit.hash.StandardSupportedAlgorithms;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -172,6 +175,40 @@ public class PlaceHoldersTest extends AbstractTestWithTestDir {
         assertThat(placeHolders.getDestPath("easy-file:6227174")).isEqualTo("data/GV_CaleidoscoopFilm_ingekwartierd_08.pdf");
     }
 
+    @Test
+    void constructor_does_not_modify_files_xml() throws Exception {
+        Path bagDir = testDir.resolve("7bf09491-54b4-436e-7f59-1027f54cbb0c/bag");
+        Path filesXml = bagDir.resolve("metadata/files.xml");
+        createDirectories(filesXml.getParent());
+        Files.write(filesXml, withPayload);
+
+        createDirectories(bagDir.resolve("data/audio-video"));
+        Files.createFile(bagDir.resolve("data/GV_CaleidoscoopFilm_ingekwartierd_08.pdf"));
+        Files.createFile(bagDir.resolve("data/audio-video/GV_Demant_ingekwartierd_08.mp4"));
+        new PlaceHolders(bagDir);
+
+        assertThat(Files.readAllBytes(filesXml)).isEqualTo(withPayload);
+    }
+
+    @Test
+    void should_only_check_files_on_disk_that_are_empty_according_to_the_manifest() throws Exception {
+        Path bagDir = testDir.resolve("7bf09491-54b4-436e-7f59-1027f54cbb0c/bag");
+        createDirectories(bagDir.resolve("audio-video"));
+        Files.write(bagDir.resolve("GV_CaleidoscoopFilm_ingekwartierd_08.pdf"), "content".getBytes(UTF_8));
+        Files.createFile(bagDir.resolve("audio-video/GV_Demant_ingekwartierd_08.mp4"));
+        BagCreator.bagInPlace(bagDir, Collections.singletonList(StandardSupportedAlgorithms.SHA1), false);
+        Path filesXml = bagDir.resolve("metadata/files.xml");
+        createDirectories(filesXml.getParent());
+        Files.write(filesXml, withPayload);
+        BagSession bag = BagSession.read(bagDir);
+
+        // would throw NoSuchFileException if its size were checked on disk
+        Files.delete(bagDir.resolve("data/GV_CaleidoscoopFilm_ingekwartierd_08.pdf"));
+        PlaceHolders placeHolders = new PlaceHolders(bag);
+
+        assertThat(placeHolders.getFilePaths()).containsExactly(Paths.get("data/audio-video/GV_Demant_ingekwartierd_08.mp4"));
+    }
+
     @Test
     void hasSameFileIds_is_happy() throws Exception {
         Path bagDir = testDir.resolve("7bf09491-54b4-436e-7f59-1027f54cbb0c/bag");
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import nl.knaw.dans.avbag.config.PseudoFileSourcesConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrefetcherTest extends AbstractTestWithTestDir {
+    private Path springfield;
+    private Path cacheDir;
+    private PseudoFileSources pseudoFileSources;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        springfield = createDirectories(testDir.resolve("springfield"));
+        cacheDir = testDir.resolve("cache");
+        Files.write(springfield.resolve("a.mp4"), "some content".getBytes(UTF_8));
+        Files.write(springfield.resolve("b.mp4"), "more content".getBytes(UTF_8));
+        Path csv = testDir.resolve("sources.csv");
+        Files.write(csv, String.join("\n",
+            "easy_file_id,dataset_id,path_in_AV_dir,path_in_springfield_dir",
+            "easy-file:1,easy-dataset:1,p1/bag/data/a.mov,a.mp4",
+            "easy-file:2,easy-dataset:2,p2/bag/data/b.mov,b.mp4",
+            "easy-file:3,easy-dataset:3,p3/bag/data/c.mov,a.mp4"
+        ).getBytes(UTF_8));
+        pseudoFileSources = new PseudoFileSources(new PseudoFileSourcesConfig(
+            createDirectories(testDir.resolve("darkarchive")), springfield, csv));
+    }
+
+    @Test
+    public void get_should_return_the_copy_of_an_upcoming_file() throws Exception {
+        try (Prefetcher prefetcher = new Prefetcher(cacheDir, 1000, 2, pseudoFileSources)) {
+            prefetcher.schedule(Arrays.asList("p1", "p2"));
+
+            Path cached = await(prefetcher, "p2", springfield.resolve("b.mp4"));
+            assertThat(cached.getParent()).hasParentRaw(cacheDir.toAbsolutePath());
+            assertThat(cached).hasContent("more content");
+        }
+        assertThat(cacheDir).isEmptyDirectory();
+    }
+
+    @Test
+    public void should_leave_other_files_in_the_cache_dir_alone() throws Exception {
+        Path other = createDirectories(cacheDir.resolve("other"));
+        Files.write(other.resolve("file"), "other content".getBytes(UTF_8));
+
+        try (Prefetcher prefetcher = new Prefetcher(cacheDir, 1000, 2, pseudoFileSources)) {
+            prefetcher.schedule(Arrays.asList("p1", "p2"));
+            await(prefetcher, "p2", springfield.resolve("b.mp4"));
+        }
+        assertThat(cacheDir.toFile().list()).containsExactly("other");
+        assertThat(other.resolve("file")).hasContent("other content");
+    }
+
+    @Test
+    public void should_evict_files_of_bag_parents_that_are_done() throws Exception {
+        // room for one file only
+        try (Prefetcher prefetcher = new Prefetcher(cacheDir, "some content".length(), 2, pseudoFileSources)) {
+            prefetcher.schedule(Arrays.asList("p1", "p2"));
+            Path a = await(prefetcher, "p1", springfield.resolve("a.mp4"));
+
+            prefetcher.started("p1");
+            prefetcher.done("p1");
+
+            await(prefetcher, "p2", springfield.resolve("b.mp4"));
+            assertThat(a).doesNotExist();
+            assertThat(prefetcher.get("p2", springfield.resolve("a.mp4"))).isEmpty();
+            assertThat(prefetcher.getUsedBytes()).isEqualTo("more content".length());
+        }
+    }
+
+    @Test
+    public void should_keep_a_shared_file_until_all_its_bag_parents_are_done() throws Exception {
+        // room for one file only, a.mp4 is used by p1 and p3
+        try (Prefetcher prefetcher = new Prefetcher(cacheDir, "some content".length(), 3, pseudoFileSources)) {
+            prefetcher.schedule(Arrays.asList("p1", "p3", "p2"));
+            Path a = await(prefetcher, "p1", springfield.resolve("a.mp4"));
+
+            prefetcher.started("p1");
+            prefetcher.done("p1");
+            prefetcher.started("p3");
+            Thread.sleep(200);
+
+            assertThat(a).hasContent("some content");
+            assertThat(prefetcher.get("p3", springfield.resolve("a.mp4"))).contains(a);
+
+            prefetcher.done("p3");
+            await(prefetcher, "p2", springfield.resolve("b.mp4"));
+            assertThat(a).doesNotExist();
+        }
+    }
+
+    private static Path await(Prefetcher prefetcher, String bagParent, Path source) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            Optional<Path> cached = prefetcher.get(bagParent, source);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Not prefetched: " + source);
+    }
+}
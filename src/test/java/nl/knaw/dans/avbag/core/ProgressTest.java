@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProgressTest {
+
+    @Test
+    public void line_should_have_key_value_pairs() {
+        try (Progress progress = new Progress(2, 100, Duration.ZERO)) {
+            assertThat(progress.line())
+                .matches("bags_done=0 bags_total=2 bytes_done=0 bytes_total=100 read_mb_s=\\d+\\.\\d write_mb_s=\\d+\\.\\d hash_mb_s=\\d+\\.\\d "
+                    + "elapsed_s=\\d+ eta_s=-1");
+        }
+    }
+
+    @Test
+    public void line_should_have_eta_when_a_bag_is_done() {
+        try (Progress progress = new Progress(2, 100, Duration.ZERO)) {
+            progress.bagDone(50);
+            assertThat(progress.line())
+                .contains("bags_done=1 bags_total=2 bytes_done=50 bytes_total=100")
+                .containsPattern("eta_s=\\d+$");
+        }
+    }
+
+    @Test
+    public void rates_should_be_counted_since_the_previous_line() {
+        try (Progress progress = new Progress(1, 0, Duration.ZERO)) {
+            progress.line();
+            progress.countRead(1024L * 1024L * 1024L);
+            assertThat(progress.line()).doesNotContain("read_mb_s=0.0");
+        }
+    }
+
+    @Test
+    public void runs_should_not_count_each_others_bytes() {
+        try (Progress progress = new Progress(1, 0, Duration.ZERO); Progress other = new Progress(1, 0, Duration.ZERO)) {
+            progress.line();
+            other.countRead(1024L * 1024L * 1024L);
+            assertThat(progress.line()).contains("read_mb_s=0.0");
+        }
+    }
+
+    @Test
+    public void runs_should_add_up_in_the_metrics() {
+        MetricRegistry registry = new MetricRegistry();
+        try (Progress progress = new Progress(1, 0, Duration.ZERO); Progress other = new Progress(1, 0, Duration.ZERO)) {
+            progress.registerMetrics(registry);
+            other.registerMetrics(registry);
+            progress.countRead(1);
+            other.countRead(2);
+        }
+        assertThat(registry.counter("avbag.bytes.read").getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void should_not_log_without_interval() {
+        try (Progress progress = new Progress(1, 0, null)) {
+            assertThat(progress.isEnabled()).isFalse();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrometheusTextTest {
+
+    @Test
+    public void format_should_write_gauges_and_counters() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.register("avbag.bags.processed", (Gauge<Long>) () -> 3L);
+        registry.register("avbag.bags.name", (Gauge<String>) () -> "not a number");
+        registry.counter("avbag.bytes.read").inc(1024);
+
+        assertThat(PrometheusText.format(registry)).isEqualTo(""
+            + "# TYPE avbag_bags_processed gauge\n"
+            + "avbag_bags_processed 3\n"
+            + "# TYPE avbag_bytes_read_total counter\n"
+            + "avbag_bytes_read_total 1024\n");
+    }
+
+    @Test
+    public void format_should_write_timers_as_summaries_in_seconds() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.timer("avbag.stage.prune").update(2, TimeUnit.SECONDS);
+
+        assertThat(PrometheusText.format(registry))
+            .contains("# TYPE avbag_stage_prune_seconds summary\n")
+            .contains("avbag_stage_prune_seconds{quantile=\"0.5\"} 2\n")
+            .contains("avbag_stage_prune_seconds_sum 2\n")
+            .contains("avbag_stage_prune_seconds_count 1\n");
+    }
+
+    @Test
+    public void sanitize_should_replace_illegal_characters() {
+        assertThat(PrometheusText.sanitize("avbag.transfer.queued-files")).isEqualTo("avbag_transfer_queued_files");
+    }
+}
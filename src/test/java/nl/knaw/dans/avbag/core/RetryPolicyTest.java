@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.config.RetryConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy policy = RetryPolicy.of(new RetryConfig());
+
+    @Test
+    public void should_retry_stale_file_handle() {
+        assertThat(policy.isTransient(new IOException("/mnt/inbox/some-bag: Stale file handle"))).isTrue();
+    }
+
+    @Test
+    public void should_retry_transient_cause() {
+        assertThat(policy.isTransient(new UncheckedIOException(new IOException("Input/output error")))).isTrue();
+    }
+
+    @Test
+    public void should_retry_timeout() {
+        assertThat(policy.isTransient(new SocketTimeoutException("Read timed out"))).isTrue();
+    }
+
+    @Test
+    public void should_not_retry_other_errors() {
+        assertThat(policy.isTransient(new FileNotFoundException("/mnt/inbox/some-bag/bagit.txt"))).isFalse();
+        assertThat(policy.isTransient(new IllegalStateException("Stale file handle"))).isFalse();
+    }
+
+    @Test
+    public void default_should_have_one_attempt() {
+        assertThat(policy.getMaxAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    public void none_should_have_one_attempt() {
+        assertThat(RetryPolicy.NONE.getMaxAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    public void delay_should_grow_up_to_the_maximum() {
+        // defaults: 10 seconds, times 2 per attempt, at most 5 minutes, plus up to 10% jitter
+        assertThat(policy.delayMillis(1)).isBetween(10_000L, 11_000L);
+        assertThat(policy.delayMillis(2)).isBetween(20_000L, 22_000L);
+        assertThat(policy.delayMillis(10)).isBetween(300_000L, 330_000L);
+    }
+}
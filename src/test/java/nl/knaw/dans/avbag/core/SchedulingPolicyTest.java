@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SchedulingPolicyTest {
+    private final Path a = Paths.get("a");
+    private final Path b = Paths.get("b");
+    private final Path c = Paths.get("c");
+    private final Path d = Paths.get("d");
+    private final Map<Path, BagSize> sizes = new HashMap<>();
+
+    {
+        sizes.put(a, new BagSize(10, 0));
+        sizes.put(b, new BagSize(1, 500));
+        sizes.put(c, new BagSize(300, 0));
+        sizes.put(d, new BagSize(2, 20));
+    }
+
+    @Test
+    public void directory_should_order_by_name() {
+        assertThat(SchedulingPolicy.DIRECTORY.order(sizes)).containsExactly(a, b, c, d);
+    }
+
+    @Test
+    public void largest_first_should_order_by_decreasing_size() {
+        assertThat(SchedulingPolicy.LARGEST_FIRST.order(sizes)).containsExactly(b, c, d, a);
+    }
+
+    @Test
+    public void smallest_first_should_order_by_increasing_size() {
+        assertThat(SchedulingPolicy.SMALLEST_FIRST.order(sizes)).containsExactly(a, d, c, b);
+    }
+
+    @Test
+    public void interleaved_should_alternate_storage_roots() {
+        assertThat(SchedulingPolicy.INTERLEAVED.order(sizes)).containsExactly(c, b, a, d);
+    }
+
+    @Test
+    public void equal_sizes_should_be_ordered_by_name() {
+        Map<Path, BagSize> equal = new HashMap<>();
+        equal.put(b, new BagSize(1, 1));
+        equal.put(a, new BagSize(1, 1));
+
+        assertThat(SchedulingPolicy.SMALLEST_FIRST.order(equal)).containsExactly(a, b);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardTest {
+
+    private final List<String> bagParents = Arrays.asList(
+        "993ec2ee-b716-45c6-b9d1-7190f98a200a",
+        "54c97d8b-2eab-4718-ac17-e26eb8333987",
+        "89e54b08-5f1f-452c-a551-0d35f75a3939",
+        "eaa33307-4795-40a3-9051-e7d91a21838e",
+        "7bf09491-54b4-436e-7f59-1027f54cbb0c"
+    );
+
+    @Test
+    public void parse_should_accept_index_and_count() {
+        assertThat(Shard.parse("1/4")).isEqualTo(new Shard(1, 4));
+        assertThat(Shard.parse("1/4").toString()).isEqualTo("1/4");
+    }
+
+    @Test
+    public void parse_should_reject_index_out_of_range() {
+        assertThatThrownBy(() -> Shard.parse("4/4"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Invalid shard 4/4, expected i/n with 0 <= i < n");
+    }
+
+    @Test
+    public void parse_should_reject_garbage() {
+        assertThatThrownBy(() -> Shard.parse("1-4"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Invalid shard 1-4, expected i/n with 0 <= i < n");
+    }
+
+    @Test
+    public void each_bag_parent_should_be_in_exactly_one_shard() {
+        int count = 3;
+        for (String bagParent : bagParents) {
+            long matches = 0;
+            for (int i = 0; i < count; i++) {
+                if (new Shard(i, count).contains(bagParent)) {
+                    matches++;
+                }
+            }
+            assertThat(matches).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void all_should_contain_everything() {
+        assertThat(bagParents).allMatch(Shard.ALL::contains);
+    }
+}
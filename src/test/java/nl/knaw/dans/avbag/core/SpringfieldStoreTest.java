@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import nl.knaw.dans.bagit.hash.SupportedAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpringfieldStoreTest extends AbstractTestWithTestDir {
+
+    @Test
+    public void add_should_copy_a_file_once() throws Exception {
+        Path source = createDirectories(testDir.resolve("springfield")).resolve("some.mp4");
+        Files.write(source, "some content".getBytes(UTF_8));
+        Path staging = createDirectories(testDir.resolve("staging"));
+
+        try (SpringfieldStore store = new SpringfieldStore(staging, Collections.singletonMap(source.toRealPath(), 2))) {
+            Map<SupportedAlgorithm, String> first = store.add(source, null, staging.resolve("bag1/data/some.mp4"),
+                Collections.singletonList(SupportedAlgorithm.SHA1));
+            Map<SupportedAlgorithm, String> second = store.add(source, null, staging.resolve("bag2/data/some.mp4"),
+                Collections.singletonList(SupportedAlgorithm.SHA1));
+
+            assertThat(second).isEqualTo(first);
+            assertThat(first.get(SupportedAlgorithm.SHA1)).isEqualTo("94e66df8cd09d410c62d9e0dc59d3a884e458e05");
+            assertThat(Files.isSameFile(staging.resolve("bag1/data/some.mp4"), staging.resolve("bag2/data/some.mp4"))).isTrue();
+            assertThat(store.getStoredFiles()).isEqualTo(1);
+            assertThat(store.getLinkedFiles()).isEqualTo(1);
+            assertThat(store.getSavedBytes()).isEqualTo("some content".length());
+            // removed at its last use
+            assertThat(staging.resolve(SpringfieldStore.DIR_NAME)).isEmptyDirectory();
+        }
+
+        assertThat(staging.resolve(SpringfieldStore.DIR_NAME)).doesNotExist();
+        assertThat(staging.resolve("bag2/data/some.mp4")).hasContent("some content");
+    }
+
+    @Test
+    public void add_should_copy_a_modified_file_again() throws Exception {
+        Path source = createDirectories(testDir.resolve("springfield")).resolve("some.mp4");
+        Files.write(source, "some content".getBytes(UTF_8));
+        Path staging = createDirectories(testDir.resolve("staging"));
+
+        try (SpringfieldStore store = new SpringfieldStore(staging, Collections.singletonMap(source.toRealPath(), 3))) {
+            store.add(source, null, staging.resolve("bag1/data/some.mp4"), Collections.singletonList(SupportedAlgorithm.SHA1));
+            Files.write(source, "other content".getBytes(UTF_8));
+            Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() + 60_000));
+            store.add(source, null, staging.resolve("bag2/data/some.mp4"), Collections.singletonList(SupportedAlgorithm.SHA1));
+
+            assertThat(store.getStoredFiles()).isEqualTo(2);
+            assertThat(store.getLinkedFiles()).isZero();
+            assertThat(staging.resolve("bag1/data/some.mp4")).hasContent("some content");
+            assertThat(staging.resolve("bag2/data/some.mp4")).hasContent("other content");
+        }
+    }
+
+    @Test
+    public void add_should_count_uses_through_a_symbolic_link_as_uses_of_the_real_file() throws Exception {
+        Path source = createDirectories(testDir.resolve("springfield")).resolve("some.mp4");
+        Files.write(source, "some content".getBytes(UTF_8));
+        Path link = Files.createSymbolicLink(testDir.resolve("springfield/link.mp4"), source.toAbsolutePath());
+        Path staging = createDirectories(testDir.resolve("staging"));
+
+        try (SpringfieldStore store = new SpringfieldStore(staging, Collections.singletonMap(source.toRealPath(), 2))) {
+            store.add(link, null, staging.resolve("bag1/data/some.mp4"), Collections.singletonList(SupportedAlgorithm.SHA1));
+            store.add(source, null, staging.resolve("bag2/data/some.mp4"), Collections.singletonList(SupportedAlgorithm.SHA1));
+
+            assertThat(store.getStoredFiles()).isEqualTo(1);
+            assertThat(store.getLinkedFiles()).isEqualTo(1);
+            assertThat(Files.isSameFile(staging.resolve("bag1/data/some.mp4"), staging.resolve("bag2/data/some.mp4"))).isTrue();
+            // removed at its last use
+            assertThat(staging.resolve(SpringfieldStore.DIR_NAME)).isEmptyDirectory();
+        }
+    }
+
+    @Test
+    public void add_should_not_store_a_file_used_once() throws Exception {
+        Path source = createDirectories(testDir.resolve("springfield")).resolve("some.mp4");
+        Files.write(source, "some content".getBytes(UTF_8));
+        Path staging = createDirectories(testDir.resolve("staging"));
+
+        try (SpringfieldStore store = new SpringfieldStore(staging, Collections.singletonMap(source.toRealPath(), 1))) {
+            Map<SupportedAlgorithm, String> checksums = store.add(source, null, staging.resolve("bag1/data/some.mp4"),
+                Collections.singletonList(SupportedAlgorithm.SHA1));
+
+            assertThat(checksums.get(SupportedAlgorithm.SHA1)).isEqualTo("94e66df8cd09d410c62d9e0dc59d3a884e458e05");
+            assertThat(store.getStoredFiles()).isZero();
+            assertThat(staging.resolve(SpringfieldStore.DIR_NAME)).isEmptyDirectory();
+            assertThat(staging.resolve("bag1/data/some.mp4")).hasContent("some content");
+        }
+    }
+}
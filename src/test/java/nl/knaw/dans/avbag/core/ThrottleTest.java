@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ThrottleTest extends AbstractTestWithTestDir {
+
+    @AfterEach
+    public void unlimit() {
+        Throttling.of(StorageRoot.STAGING).setBytesPerSecond(0);
+        Throttling.of(StorageRoot.STAGING).setOperationsPerSecond(0);
+    }
+
+    @Test
+    public void should_not_wait_without_limits() throws Exception {
+        Throttle throttle = new Throttle(0, 0);
+        long start = System.nanoTime();
+        throttle.acquireBytes(Long.MAX_VALUE / 2);
+        throttle.acquireOperation();
+        assertThat(throttle.isUnlimited()).isTrue();
+        assertThat(System.nanoTime() - start).isLessThan(100_000_000L);
+    }
+
+    @Test
+    public void should_wait_for_debt_to_be_paid_off() throws Exception {
+        Throttle throttle = new Throttle(10_000, 0);
+        long start = System.nanoTime();
+        throttle.acquireBytes(3_000);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(250_000_000L);
+    }
+
+    @Test
+    public void should_apply_changed_limit() {
+        Throttle throttle = new Throttle(0, 0);
+        throttle.setOperationsPerSecond(5);
+        assertThat(throttle.getOperationsPerSecond()).isEqualTo(5);
+        assertThat(throttle.isUnlimited()).isFalse();
+    }
+
+    @Test
+    public void throttled_copy_should_preserve_content() throws Exception {
+        Path source = createDirectories(testDir.resolve("source/sub"));
+        Files.write(source.resolve("file.txt"), "some content".getBytes(UTF_8));
+        Throttling.of(StorageRoot.STAGING).setBytesPerSecond(1_000_000);
+
+        StorageIo.copyDirectory(testDir.resolve("source"), testDir.resolve("target"), StorageRoot.STAGING, StorageRoot.STAGING);
+
+        assertThat(testDir.resolve("target/sub/file.txt")).hasContent("some content");
+        assertThat(Files.getLastModifiedTime(testDir.resolve("target/sub/file.txt")))
+            .isEqualTo(Files.getLastModifiedTime(source.resolve("file.txt")));
+    }
+}
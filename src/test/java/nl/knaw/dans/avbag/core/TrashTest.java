@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrashTest extends AbstractTestWithTestDir {
+
+    @Test
+    public void dispose_should_remove_the_directory_from_the_inbox() throws Exception {
+        Path bagParent = createDirectories(testDir.resolve("inbox/1234/5678"));
+        Files.write(bagParent.resolve("some.txt"), "some content".getBytes(UTF_8));
+        Path trashDir = testDir.resolve("trash");
+
+        try (Trash trash = new Trash(trashDir, 1)) {
+            trash.dispose(bagParent.getParent());
+            assertThat(testDir.resolve("inbox")).isEmptyDirectory();
+        }
+
+        assertThat(trashDir).isEmptyDirectory();
+    }
+
+    @Test
+    public void should_delete_leftovers_when_opened() throws Exception {
+        Path trashDir = testDir.resolve("trash");
+        Path leftover = createDirectories(trashDir.resolve("1234-some-uuid.avbag-trash/5678"));
+        Files.write(leftover.resolve("some.txt"), "some content".getBytes(UTF_8));
+
+        try (Trash ignored = new Trash(trashDir, 2)) {
+            // nothing to dispose
+        }
+
+        assertThat(trashDir).isEmptyDirectory();
+    }
+
+    @Test
+    public void should_leave_other_files_in_the_trash_dir_alone() throws Exception {
+        Path trashDir = testDir.resolve("trash");
+        Path other = createDirectories(trashDir.resolve("1234/5678"));
+        Files.write(other.resolve("some.txt"), "some content".getBytes(UTF_8));
+
+        try (Trash ignored = new Trash(trashDir, 2)) {
+            // nothing to dispose
+        }
+
+        assertThat(other.resolve("some.txt")).hasContent("some content");
+    }
+}
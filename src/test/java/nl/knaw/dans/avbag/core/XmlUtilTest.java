@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.core;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class XmlUtilTest extends AbstractTestWithTestDir {
+
+    private static String filesXml(int numberOfFiles) {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<files xmlns='http://easy.dans.knaw.nl/schemas/bag/metadata/files/' xmlns:dct='http://purl.org/dc/terms/'>\n");
+        for (int i = 0; i < numberOfFiles; i++) {
+            xml.append("  <file filepath='data/\u00eb-").append(i).append(".mp4'>")
+                .append("<dct:identifier>easy-file:").append(i).append("</dct:identifier>")
+                .append("<accessibleToRights>ANONYMOUS</accessibleToRights><visibleToRights>ANONYMOUS</visibleToRights></file>\n");
+        }
+        return xml.append("</files>\n").toString();
+    }
+
+    @Test
+    public void should_parse_and_serialize_concurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                int numberOfFiles = i + 1;
+                results.add(executor.submit(() -> {
+                    Document document = XmlUtil.readXmlFromString(filesXml(numberOfFiles));
+                    assertThat(document.getElementsByTagName("file").getLength()).isEqualTo(numberOfFiles);
+                    return XmlUtil.serializeNode(document.getDocumentElement());
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).get()).contains("data/\u00eb-" + i + ".mp4");
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void should_still_reject_doctype_declarations() {
+        assertThatThrownBy(() -> XmlUtil.readXmlFromString("<?xml version='1.0'?><!DOCTYPE files [<!ENTITY x 'y'>]><files>&x;</files>"))
+            .hasMessageContaining("DOCTYPE");
+    }
+
+    @Test
+    public void writeFilesXml_should_write_utf8() throws Exception {
+        Path bagDir = testDir.resolve("bag");
+        createDirectories(bagDir.resolve("metadata"));
+
+        XmlUtil.writeFilesXml(bagDir, XmlUtil.readXmlFromString(filesXml(1)));
+
+        assertThat(new String(Files.readAllBytes(bagDir.resolve("metadata/files.xml")), UTF_8)).contains("data/\u00eb-0.mp4");
+    }
+}
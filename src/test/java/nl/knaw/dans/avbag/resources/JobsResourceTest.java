@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.avbag.resources;
+
+import nl.knaw.dans.avbag.AbstractTestWithTestDir;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.BadRequestException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.file.Files.createDirectories;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JobsResourceTest extends AbstractTestWithTestDir {
+    private Path inbox;
+    private Path outbox;
+    private JobsResource resource;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        inbox = createDirectories(testDir.resolve("inbox")).toAbsolutePath();
+        outbox = createDirectories(testDir.resolve("outbox")).toAbsolutePath();
+        // the checks come before the job is submitted
+        resource = new JobsResource(null, inbox, outbox);
+    }
+
+    @Test
+    public void submit_should_reject_a_relative_directory() {
+        JobRequest request = new JobRequest(Paths.get("target/test/JobsResourceTest/inbox"), outbox, null, false);
+
+        assertThatThrownBy(() -> resource.submit(request, null))
+            .isInstanceOf(BadRequestException.class)
+            .hasMessage("inputDir target/test/JobsResourceTest/inbox is not an absolute path");
+    }
+
+    @Test
+    public void submit_should_reject_a_directory_outside_the_root() throws Exception {
+        Path other = createDirectories(testDir.resolve("other")).toAbsolutePath();
+        JobRequest request = new JobRequest(inbox, other, null, false);
+
+        assertThatThrownBy(() -> resource.submit(request, null))
+            .isInstanceOf(BadRequestException.class)
+            .hasMessage("outputDir " + other + " is not in " + outbox);
+    }
+
+    @Test
+    public void submit_should_reject_a_link_out_of_the_root() throws Exception {
+        Path other = createDirectories(testDir.resolve("other")).toAbsolutePath();
+        Path link = Files.createSymbolicLink(inbox.resolve("link"), other);
+        JobRequest request = new JobRequest(link, outbox, null, false);
+
+        assertThatThrownBy(() -> resource.submit(request, null))
+            .isInstanceOf(BadRequestException.class)
+            .hasMessage("inputDir " + link + " is not in " + inbox);
+    }
+
+    @Test
+    public void submit_should_reject_a_bag_parent_of_more_than_one_segment() throws Exception {
+        createDirectories(testDir.resolve("other/bag-parent"));
+        JobRequest request = new JobRequest(inbox, outbox, "../other/bag-parent", false);
+
+        assertThatThrownBy(() -> resource.submit(request, null))
+            .isInstanceOf(BadRequestException.class)
+            .hasMessage("bagParent ../other/bag-parent is not a directory name");
+    }
+
+    @Test
+    public void submit_should_reject_a_bag_parent_going_up() {
+        JobRequest request = new JobRequest(inbox, outbox, "..", false);
+
+        assertThatThrownBy(() -> resource.submit(request, null))
+            .isInstanceOf(BadRequestException.class)
+            .hasMessage("bagParent .. is not a directory name");
+    }
+}